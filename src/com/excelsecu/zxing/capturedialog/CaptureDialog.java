@@ -18,6 +18,7 @@ package com.excelsecu.zxing.capturedialog;
 
 
 import java.io.IOException;
+import java.util.Map;
 import java.util.Vector;
 
 import android.app.Dialog;
@@ -25,8 +26,10 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.media.AudioManager;
 import android.media.MediaPlayer;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.Message;
 import android.os.Vibrator;
 import android.os.Build.VERSION;
 import android.view.SurfaceHolder;
@@ -37,14 +40,38 @@ import android.view.Window;
 import android.widget.FrameLayout;
 
 import com.excelsecu.zxing.capturedialog.QRCodeHelper.CaptureQRCodeListener;
+import com.excelsecu.zxing.capturedialog.QRCodeHelper.CaptureQRCodeThumbnailListener;
+import com.excelsecu.zxing.engine.AutoTorch;
+import com.excelsecu.zxing.engine.CameraSteering;
+import com.excelsecu.zxing.engine.DecodeTimingHistogram;
+import com.excelsecu.zxing.engine.Frame;
+import com.excelsecu.zxing.engine.FrameChangeDetector;
+import com.excelsecu.zxing.engine.FrameCorpus;
+import com.excelsecu.zxing.engine.FrameCorpusWriter;
+import com.excelsecu.zxing.engine.FrameCropper;
+import com.excelsecu.zxing.engine.FrameSource;
+import com.excelsecu.zxing.engine.RegionTracker;
+import com.excelsecu.zxing.engine.ResultSink;
+import com.excelsecu.zxing.engine.ScanEngine;
+import com.excelsecu.zxing.engine.ScanResult;
+import com.excelsecu.zxing.engine.SharpnessGate;
+import com.excelsecu.zxing.util.LogUtil;
 import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.DecodeMetrics;
+import com.google.zxing.PlanarYUVLuminanceSource;
 import com.google.zxing.Result;
+import com.google.zxing.client.android.Res;
+import com.google.zxing.client.android.ViewfinderResultPointCallback;
 import com.google.zxing.client.android.ViewfinderView;
 import com.google.zxing.client.android.camera.CameraManager;
+import com.google.zxing.client.android.camera.FrontLightMode;
 
 public class CaptureDialog extends Dialog implements Callback {
 
-    private CaptureDialogHandler handler;
+    private static final String TAG = CaptureDialog.class.getSimpleName();
+
+    private volatile CaptureDialogHandler handler;
     private ViewfinderView viewfinderView;
     private SurfaceView surfaceView;
     private boolean hasSurface;
@@ -54,6 +81,15 @@ public class CaptureDialog extends Dialog implements Callback {
     private boolean playBeep;
     private boolean vibrate;
     private CameraManager cameraManager;
+    private final ScanEngine scanEngine;
+    private int scanCount;
+    private long firstScanTime;
+    private DecodeMetrics decodeMetrics;
+    private FrameCorpusWriter frameRecorder;
+    private boolean decodeInverted;
+    private CameraOpenTask cameraOpenTask;
+    private Map<DecodeHintType,Object> decodeHints;
+    private volatile long startupTime;
 
     private CaptureQRCodeListener listener;
 
@@ -61,12 +97,124 @@ public class CaptureDialog extends Dialog implements Callback {
         super(context, android.R.style.Theme_Black_NoTitleBar);
 
         this.listener = listener;
+        EngineAdapter adapter = new EngineAdapter();
+        scanEngine = new ScanEngine(adapter, adapter, adapter);
+        scanEngine.setThumbnails(listener instanceof CaptureQRCodeThumbnailListener);
     }
 
     CameraManager getCameraManager() {
         return cameraManager;
     }
 
+    /**
+     * Sets how many threads decode preview frames in parallel. Call it before {@link #show()}.
+     * @param count number of decode threads, 0 or less means one per core
+     */
+    public void setDecodeThreadCount(int count) {
+        scanEngine.setWorkerCount(count);
+    }
+
+    /**
+     * Keeps the camera and decoder running after a result, so every new code in view is passed
+     * to the listener, until the dialog is dismissed. Call it before {@link #show()}.
+     * @param continuous {@code false} to dismiss after the first result, the default
+     */
+    public void setContinuous(boolean continuous) {
+        scanEngine.setContinuous(continuous);
+    }
+
+    /**
+     * In continuous mode, how long a result is ignored for after it was last seen.
+     * @param millis window in ms
+     */
+    public void setDuplicateWindow(long millis) {
+        scanEngine.setDuplicateWindow(millis);
+    }
+
+    /**
+     * Give up on a frame which takes longer than this to decode, and move on to a newer one.
+     * @param millis budget per frame in ms, 0 or less for none, the default
+     */
+    public void setDecodeTimeBudget(int millis) {
+        scanEngine.setTimeBudget(millis);
+    }
+
+    /**
+     * Times every stage of every decode, found or not. Call it before {@link #show()}. A
+     * {@link DecodeTimingHistogram} is dumped to the log whenever the dialog is paused.
+     * @param metrics where timings go, {@code null} for none, the default
+     */
+    public void setDecodeMetrics(DecodeMetrics metrics) {
+        decodeMetrics = metrics;
+    }
+
+    public DecodeMetrics getDecodeMetrics() {
+        return decodeMetrics;
+    }
+
+    /**
+     * Also finds light on dark codes, e.g. on dark labels or screens. A frame with nothing found
+     * is tried once more with black and white swapped, reusing its binarization. Call it before
+     * {@link #show()}.
+     * @param inverted {@code true} to try both polarities, {@code false} for dark on light only,
+     *  the default
+     */
+    public void setDecodeInverted(boolean inverted) {
+        decodeInverted = inverted;
+    }
+
+    /**
+     * Record the frames scanned into a corpus, to replay them later with {@link FrameCorpus}.
+     * Set before the dialog is shown; the caller closes the recorder after dismissing it.
+     * @param recorder where frames go, {@code null} for nowhere, the default
+     */
+    public void setFrameRecorder(FrameCorpusWriter recorder) {
+        frameRecorder = recorder;
+    }
+
+    /**
+     * @return the check which skips blurred frames, to tune it or read its counters
+     */
+    public SharpnessGate getSharpnessGate() {
+        return scanEngine.getSharpnessGate();
+    }
+
+    /**
+     * @return the check which skips frames that look like the last failed one
+     */
+    public FrameChangeDetector getFrameChangeDetector() {
+        return scanEngine.getFrameChangeDetector();
+    }
+
+    /**
+     * @return the tracker which narrows the search to where a code was last seen
+     */
+    public RegionTracker getRegionTracker() {
+        return scanEngine.getRegionTracker();
+    }
+
+    /**
+     * @return the controller which turns the torch on in the dark; it's enabled by the
+     *  front light preference being AUTO, or by hand
+     */
+    public AutoTorch getAutoTorch() {
+        return scanEngine.getAutoTorch();
+    }
+
+    /**
+     * @return the controller which moves focus, metering and zoom onto the code; on by default
+     */
+    public CameraSteering getCameraSteering() {
+        return scanEngine.getCameraSteering();
+    }
+
+    /**
+     * @return the pipeline behind this dialog; the dialog only adds the camera and the UI
+     */
+    public ScanEngine getScanEngine() {
+        return scanEngine;
+    }
+
     /** Called when the activity is first created. */
     @Override
     public void onCreate(Bundle savedInstanceState) {
@@ -83,6 +231,7 @@ public class CaptureDialog extends Dialog implements Callback {
 
         //cameraManager = new CameraManager(getContext().getApplication());
         cameraManager = new CameraManager(getContext());
+        cameraManager.setFrameRecorder(frameRecorder);
 
         //@ch use Java code to build layout instead of xml file
         //viewfinderView = (ViewfinderView) findViewById(R.id.viewfinder_view);
@@ -115,9 +264,22 @@ public class CaptureDialog extends Dialog implements Callback {
 
     @SuppressWarnings("deprecation")
     protected void onResume() {
+        startupTime = System.currentTimeMillis();
+        decodeFormats = null;
+        characterSet = null;
+
+        //@ch open the camera in the background, and start the decode threads meanwhile
+        openCamera();
+        if (handler == null) {
+            handler = new CaptureDialogHandler(this, cameraManager);
+        }
+        scanEngine.prepare();
+        // One frame per decode thread, plus the newest captured and the one being filled
+        cameraManager.setPreviewBufferCount(scanEngine.getWorkerCount() + 2);
+
         SurfaceHolder surfaceHolder = surfaceView.getHolder();
         if (hasSurface) {
-            initCamera(surfaceHolder);
+            startPreviewIfReady();
         } else {
             surfaceHolder.addCallback(this);
         }
@@ -127,9 +289,6 @@ public class CaptureDialog extends Dialog implements Callback {
             surfaceHolder.setType(SurfaceHolder.SURFACE_TYPE_PUSH_BUFFERS);
         }
 
-        decodeFormats = null;
-        characterSet = null;
-
         playBeep = true;
         AudioManager audioService = (AudioManager) getContext().getSystemService(Context.AUDIO_SERVICE);
         if (audioService.getRingerMode() != AudioManager.RINGER_MODE_NORMAL) {
@@ -146,24 +305,223 @@ public class CaptureDialog extends Dialog implements Callback {
     }
 
     protected void onPause() {
+        if (cameraOpenTask != null) {
+            cameraOpenTask.cancel(false);
+            cameraOpenTask = null;
+        }
+        scanEngine.stop();
         if (handler != null) {
             handler.quitSynchronously();
             handler = null;
         }
+        SharpnessGate sharpnessGate = scanEngine.getSharpnessGate();
+        LogUtil.d(TAG, "Sharpness gate skipped " + sharpnessGate.getFramesSkipped() + " of "
+                + sharpnessGate.getFramesChecked() + " frames");
+        FrameChangeDetector frameChangeDetector = scanEngine.getFrameChangeDetector();
+        LogUtil.d(TAG, "Change detector skipped " + frameChangeDetector.getFramesSkipped() + " of "
+                + frameChangeDetector.getFramesChecked() + " frames");
+        RegionTracker regionTracker = scanEngine.getRegionTracker();
+        LogUtil.d(TAG, "Region tracker searched " + regionTracker.getFramesInRegion() + " of "
+                + (regionTracker.getFramesInRegion() + regionTracker.getFramesInFull())
+                + " frames in a region");
+        AutoTorch autoTorch = scanEngine.getAutoTorch();
+        if (autoTorch.isEnabled()) {
+            LogUtil.d(TAG, "Auto torch switched " + autoTorch.getSwitches() + " times, last luminance "
+                    + autoTorch.getLastLuminance());
+        }
+        CameraSteering cameraSteering = scanEngine.getCameraSteering();
+        LogUtil.d(TAG, "Camera steering moved the area " + cameraSteering.getAreaUpdates()
+                + " times, zoomed in " + cameraSteering.getZoomIns() + " and out "
+                + cameraSteering.getZoomOuts() + " times");
+        if (scanCount > 1) {
+            long seconds = Math.max(1L, (System.currentTimeMillis() - firstScanTime) / 1000L);
+            LogUtil.d(TAG, scanCount + " scans in " + seconds + " s, "
+                    + (scanCount * 60L / seconds) + " per minute");
+        }
+        scanCount = 0;
+        if (decodeMetrics instanceof DecodeTimingHistogram) {
+            LogUtil.d(TAG, "Decode timings:\n" + ((DecodeTimingHistogram) decodeMetrics).dump());
+        }
         cameraManager.closeDriver();
     }
 
-    private void initCamera(SurfaceHolder surfaceHolder) {
+    private void openCamera() {
+        CameraOpenTask task = new CameraOpenTask();
+        //@ch api compatible
+        if (VERSION.SDK_INT >= 11) {
+            task.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        } else {
+            task.execute();
+        }
+        cameraOpenTask = task;
+    }
+
+    /**
+     * Starts the preview once the camera is open and the surface exists, whichever comes last.
+     */
+    private void startPreviewIfReady() {
+        if (!hasSurface || cameraOpenTask != null || handler == null || !cameraManager.isOpen()) {
+            return;
+        }
         try {
-            cameraManager.openDriver(surfaceHolder);
+            cameraManager.setPreviewDisplay(surfaceView.getHolder());
         } catch (IOException ioe) {
-            return;
-        } catch (RuntimeException e) {
+            LogUtil.w(TAG, "Can't show the preview", ioe);
             return;
         }
-        if (handler == null) {
-            handler = new CaptureDialogHandler(this, decodeFormats,
-                    null, characterSet, cameraManager);
+        cameraManager.startPreview();
+        logStartup("Preview started");
+        AutoTorch autoTorch = scanEngine.getAutoTorch();
+        if (cameraManager.getFrontLightMode() == FrontLightMode.AUTO) {
+            autoTorch.setEnabled(true);
+        }
+        autoTorch.setTorchOn(cameraManager.isTorchOn());
+        scanEngine.start(decodeHints);
+    }
+
+    /**
+     * Logs how long after the dialog was resumed a step of starting up happened.
+     */
+    void logStartup(String milestone) {
+        LogUtil.d(TAG, "Startup: " + milestone + " at "
+                + (System.currentTimeMillis() - startupTime) + " ms");
+    }
+
+    /**
+     * Opens and configures the camera off the UI thread, which takes hundreds of ms on some
+     * devices.
+     */
+    private final class CameraOpenTask extends AsyncTask<Object,Object,Exception> {
+        private Map<DecodeHintType,Object> hints;
+
+        @Override
+        protected Exception doInBackground(Object... voids) {
+            // Reading the prefs for the hints is slow too, so it's done here as well
+            hints = DecodeHints.build(getContext(), decodeFormats, characterSet);
+            hints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK,
+                    new ViewfinderResultPointCallback(viewfinderView));
+            if (decodeMetrics != null) {
+                hints.put(DecodeHintType.DECODE_METRICS, decodeMetrics);
+            }
+            if (decodeInverted) {
+                hints.put(DecodeHintType.ALSO_INVERTED, Boolean.TRUE);
+            }
+            try {
+                cameraManager.openCamera();
+                return null;
+            } catch (IOException ioe) {
+                return ioe;
+            } catch (RuntimeException re) {
+                return re;
+            }
+        }
+
+        @Override
+        protected void onPostExecute(Exception result) {
+            if (cameraOpenTask != this) {
+                return;
+            }
+            cameraOpenTask = null;
+            decodeHints = hints;
+            if (result != null) {
+                LogUtil.w(TAG, "Can't open the camera", result);
+                return;
+            }
+            logStartup("Camera open");
+            startPreviewIfReady();
+        }
+
+        @Override
+        protected void onCancelled() {
+            // Paused while opening; the camera may have been opened after it was closed
+            if (handler == null) {
+                cameraManager.closeDriver();
+            }
+        }
+    }
+
+    /**
+     * Connects the engine to the camera and to the main thread.
+     */
+    private final class EngineAdapter implements FrameSource, FrameCropper, ResultSink {
+        @Override
+        public void requestFrame(FrameSource.Callback callback) {
+            CaptureDialogHandler theHandler = handler;
+            if (theHandler != null) {
+                theHandler.requestFrame(callback);
+            }
+        }
+
+        @Override
+        public void releaseFrame(Frame frame) {
+            cameraManager.releasePreviewFrame(frame.getData());
+        }
+
+        @Override
+        public void requestFocus() {
+            cameraManager.requestAutoFocus();
+        }
+
+        @Override
+        public void setTorch(final boolean on) {
+            CaptureDialogHandler theHandler = handler;
+            if (theHandler != null) {
+                // Switching the torch restarts autofocus, which belongs on the main thread
+                theHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        cameraManager.setTorch(on);
+                    }
+                });
+            }
+        }
+
+        @Override
+        public void setFocusArea(final float left, final float top, final float right,
+                final float bottom) {
+            CaptureDialogHandler theHandler = handler;
+            if (theHandler != null) {
+                theHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        cameraManager.setFocusArea(left, top, right, bottom);
+                    }
+                });
+            }
+        }
+
+        @Override
+        public void stepZoom(final boolean in) {
+            CaptureDialogHandler theHandler = handler;
+            if (theHandler != null) {
+                theHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        cameraManager.stepZoom(in);
+                    }
+                });
+            }
+        }
+
+        @Override
+        public PlanarYUVLuminanceSource crop(Frame frame) {
+            return cameraManager.buildLuminanceSource(frame.getData(), frame.getWidth(),
+                    frame.getHeight());
+        }
+
+        @Override
+        public void onResult(ScanResult result) {
+            CaptureDialogHandler theHandler = handler;
+            if (theHandler != null) {
+                Message.obtain(theHandler, Res.id.decode_succeeded, result).sendToTarget();
+            }
+        }
+
+        @Override
+        public void onFrameDone(long frameNumber) {
+            if (frameNumber == 0L) {
+                logStartup("First frame decoded");
+            }
         }
     }
 
@@ -177,7 +535,7 @@ public class CaptureDialog extends Dialog implements Callback {
     public void surfaceCreated(SurfaceHolder holder) {
         if (!hasSurface) {
             hasSurface = true;
-            initCamera(holder);
+            startPreviewIfReady();
         }
 
     }
@@ -203,8 +561,18 @@ public class CaptureDialog extends Dialog implements Callback {
         //@ch no need
         //viewfinderView.drawResultBitmap(barcode);
         playBeepSoundAndVibrate();
-        listener.onResult(obj.getText());
-        dismiss();
+        if (listener instanceof CaptureQRCodeThumbnailListener) {
+            ((CaptureQRCodeThumbnailListener) listener).onResult(obj.getText(), barcode);
+        } else {
+            listener.onResult(obj.getText());
+        }
+        if (scanEngine.isContinuous()) {
+            if (scanCount++ == 0) {
+                firstScanTime = obj.getTimestamp();
+            }
+        } else {
+            dismiss();
+        }
     }
 
     private void initBeepSound() {
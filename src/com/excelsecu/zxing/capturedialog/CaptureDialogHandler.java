@@ -19,30 +19,27 @@ package com.excelsecu.zxing.capturedialog;
 import android.content.ActivityNotFoundException;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
-import android.graphics.BitmapFactory;
 import android.provider.Browser;
 
+import com.excelsecu.zxing.engine.Frame;
+import com.excelsecu.zxing.engine.FrameSource;
+import com.excelsecu.zxing.engine.ScanResult;
 import com.excelsecu.zxing.util.LogUtil;
-import com.google.zxing.BarcodeFormat;
-import com.google.zxing.DecodeHintType;
 import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
 import com.google.zxing.client.android.CaptureActivityHandler;
 import com.google.zxing.client.android.Res;
-import com.google.zxing.client.android.ViewfinderResultPointCallback;
 import com.google.zxing.client.android.camera.CameraManager;
 
 import android.content.Intent;
 import android.graphics.Bitmap;
 import android.net.Uri;
-import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
 
-import java.util.Collection;
-import java.util.Map;
-
 /**
- * This class handles all the messaging which comprises the state machine for capture.
+ * This class handles all the messaging between the camera, the {@link com.excelsecu.zxing.engine.ScanEngine}
+ * and the dialog on the main thread.
  *
  * @author dswitkin@google.com (Daniel Switkin)
  */
@@ -51,57 +48,58 @@ public final class CaptureDialogHandler extends Handler {
   private static final String TAG = CaptureActivityHandler.class.getSimpleName();
 
   private final CaptureDialog dialog;
-  private final DecodeThread decodeThread;
-  private State state;
   private final CameraManager cameraManager;
+  // Whoever asked for the preview frame on its way, touched from the engine's threads too
+  private volatile FrameSource.Callback frameCallback;
+  private volatile boolean quit;
+  private boolean firstFrame = true;
 
-  private enum State {
-    PREVIEW,
-    SUCCESS,
-    DONE
-  }
-
-  CaptureDialogHandler(CaptureDialog dialog,
-                         Collection<BarcodeFormat> decodeFormats,
-                         Map<DecodeHintType,?> baseHints,
-                         String characterSet,
-                         CameraManager cameraManager) {
+  CaptureDialogHandler(CaptureDialog dialog, CameraManager cameraManager) {
     this.dialog = dialog;
-    decodeThread = new DecodeThread(dialog, decodeFormats, baseHints, characterSet,
-        new ViewfinderResultPointCallback(dialog.getViewfinderView()));
-    decodeThread.start();
-    state = State.SUCCESS;
-
-    // Start ourselves capturing previews and decoding.
     this.cameraManager = cameraManager;
-    cameraManager.startPreview();
-    restartPreviewAndDecode();
+  }
+
+  /**
+   * Asks the camera for its next preview frame, which is handed to {@code callback} on the main
+   * thread.
+   */
+  void requestFrame(FrameSource.Callback callback) {
+    if (quit) {
+      return;
+    }
+    frameCallback = callback;
+    cameraManager.requestPreviewFrame(this, Res.id.preview_frame);
   }
 
   @Override
   public void handleMessage(Message message) {
     switch (message.what) {
       case Res.id.restart_preview:
-        restartPreviewAndDecode();
+        dialog.getScanEngine().restart();
+        dialog.drawViewfinder();
         break;
-      case Res.id.decode_succeeded:
-        state = State.SUCCESS;
-        Bundle bundle = message.getData();
-        Bitmap barcode = null;
-        if (bundle != null) {
-          byte[] compressedBitmap = bundle.getByteArray(DecodeThread.BARCODE_BITMAP);
-          if (compressedBitmap != null) {
-            barcode = BitmapFactory.decodeByteArray(compressedBitmap, 0, compressedBitmap.length, null);
-            // Mutable copy:
-            barcode = barcode.copy(Bitmap.Config.ARGB_8888, true);
-          }       
+      case Res.id.preview_frame:
+        FrameSource.Callback callback = frameCallback;
+        frameCallback = null;
+        if (quit || callback == null) {
+          cameraManager.releasePreviewFrame((byte[]) message.obj);
+          break;
+        }
+        if (firstFrame) {
+          firstFrame = false;
+          dialog.logStartup("First frame");
         }
-        dialog.handleDecode((Result) message.obj, barcode);
+        Frame frame = new Frame((byte[]) message.obj, message.arg1, message.arg2,
+            System.currentTimeMillis());
+        // Here frames are still in capture order, before a decode thread takes them
+        cameraManager.recordFrame(frame.getData(), frame.getWidth(), frame.getHeight(),
+            frame.getTimestamp());
+        callback.onFrame(frame);
         break;
-      case Res.id.decode_failed:
-        // We're decoding as fast as possible, so when one decode fails, start another.
-        state = State.PREVIEW;
-        cameraManager.requestPreviewFrame(decodeThread.getHandler(), Res.id.decode);
+      case Res.id.decode_succeeded:
+        if (!quit) {
+          handleDecodeSucceeded((ScanResult) message.obj);
+        }
         break;
       case Res.id.return_scan_result:
           //dialog.setResult(Activity.RESULT_OK, (Intent) message.obj);
@@ -139,28 +137,39 @@ public final class CaptureDialogHandler extends Handler {
   }
 
   public void quitSynchronously() {
-    state = State.DONE;
+    quit = true;
+    frameCallback = null;
     cameraManager.stopPreview();
-    Message quit = Message.obtain(decodeThread.getHandler(), Res.id.quit);
-    quit.sendToTarget();
-    try {
-      // Wait at most half a second; should be enough time, and onPause() will timeout quickly
-      decodeThread.join(500L);
-    } catch (InterruptedException e) {
-      // continue
-    }
 
     // Be absolutely sure we don't send any queued up messages
+    removeMessages(Res.id.preview_frame);
     removeMessages(Res.id.decode_succeeded);
-    removeMessages(Res.id.decode_failed);
   }
 
-  private void restartPreviewAndDecode() {
-    if (state == State.SUCCESS) {
-      state = State.PREVIEW;
-      cameraManager.requestPreviewFrame(decodeThread.getHandler(), Res.id.decode);
-      dialog.drawViewfinder();
+  private void handleDecodeSucceeded(ScanResult scanResult) {
+    Result result = scanResult.getResult();
+    ResultPoint[] points = result.getResultPoints();
+    if (points != null) {
+      for (int i = 0; i < points.length; i++) {
+        points[i] = cameraManager.toFramingRectInPreview(points[i]);
+      }
+    }
+    Bitmap barcode = null;
+    int[] pixels = scanResult.getThumbnail();
+    if (pixels != null) {
+      int width = scanResult.getThumbnailWidth();
+      int height = scanResult.getThumbnailHeight();
+      if (cameraManager.isDecodeInSensorOrientation()) {
+        pixels = CameraManager.rotateThumbnail(pixels, width, height);
+        int temp = width;
+        width = height;
+        height = temp;
+      }
+      // Mutable, so result points can be drawn on it
+      barcode = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+      barcode.setPixels(pixels, 0, width, 0, 0, width, height);
     }
+    dialog.handleDecode(result, barcode);
   }
 
 }
\ No newline at end of file
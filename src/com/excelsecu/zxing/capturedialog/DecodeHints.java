@@ -19,53 +19,41 @@ package com.excelsecu.zxing.capturedialog;
 import com.excelsecu.zxing.util.LogUtil;
 import com.google.zxing.BarcodeFormat;
 import com.google.zxing.DecodeHintType;
-import com.google.zxing.ResultPointCallback;
 import com.google.zxing.client.android.DecodeFormatManager;
 import com.google.zxing.client.android.PreferencesActivity;
 
+import android.content.Context;
 import android.content.SharedPreferences;
-import android.os.Handler;
-import android.os.Looper;
 import android.preference.PreferenceManager;
 
 import java.util.Collection;
 import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.Map;
-import java.util.concurrent.CountDownLatch;
 
 /**
- * This thread does all the heavy lifting of decoding the images.
+ * Builds the hints the dialog scans with, from its arguments and the prefs.
  *
  * @author dswitkin@google.com (Daniel Switkin)
  */
-final class DecodeThread extends Thread {
+final class DecodeHints {
 
-  public static final String BARCODE_BITMAP = "barcode_bitmap";
-  public static final String BARCODE_SCALED_FACTOR = "barcode_scaled_factor";
-
-  private final CaptureDialog dialog;
-  private final Map<DecodeHintType,Object> hints;
-  private Handler handler;
-  private final CountDownLatch handlerInitLatch;
-
-  DecodeThread(CaptureDialog dialog,
-               Collection<BarcodeFormat> decodeFormats,
-               Map<DecodeHintType,?> baseHints,
-               String characterSet,
-               ResultPointCallback resultPointCallback) {
-
-    this.dialog = dialog;
-    handlerInitLatch = new CountDownLatch(1);
+  private DecodeHints() {
+  }
 
-    hints = new EnumMap<>(DecodeHintType.class);
-    if (baseHints != null) {
-      hints.putAll(baseHints);
-    }
+  /**
+   * Reads the prefs, so call it off the main thread.
+   *
+   * @param decodeFormats the formats to look for, or {@code null} to take them from the prefs
+   * @param characterSet the character set to assume, or {@code null}
+   */
+  static Map<DecodeHintType,Object> build(Context context,
+                                          Collection<BarcodeFormat> decodeFormats,
+                                          String characterSet) {
+    Map<DecodeHintType,Object> hints = new EnumMap<>(DecodeHintType.class);
 
-    // The prefs can't change while the thread is running, so pick them up once here.
     if (decodeFormats == null || decodeFormats.isEmpty()) {
-      SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(dialog.getContext());
+      SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
       decodeFormats = EnumSet.noneOf(BarcodeFormat.class);
       if (prefs.getBoolean(PreferencesActivity.KEY_DECODE_1D_PRODUCT, true)) {
         decodeFormats.addAll(DecodeFormatManager.PRODUCT_FORMATS);
@@ -91,25 +79,8 @@ final class DecodeThread extends Thread {
     if (characterSet != null) {
       hints.put(DecodeHintType.CHARACTER_SET, characterSet);
     }
-    hints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, resultPointCallback);
-    LogUtil.i("DecodeThread", "Hints: " + hints);
-  }
-
-  Handler getHandler() {
-    try {
-      handlerInitLatch.await();
-    } catch (InterruptedException ie) {
-      // continue?
-    }
-    return handler;
-  }
-
-  @Override
-  public void run() {
-    Looper.prepare();
-    handler = new DecodeHandler(dialog, hints);
-    handlerInitLatch.countDown();
-    Looper.loop();
+    LogUtil.i("DecodeHints", "Hints: " + hints);
+    return hints;
   }
 
 }
@@ -17,6 +17,7 @@
 package com.excelsecu.zxing.capturedialog;
 
 import android.app.Activity;
+import android.graphics.Bitmap;
 
 public class QRCodeHelper {
 
@@ -24,7 +25,28 @@ public class QRCodeHelper {
         new CaptureDialog(activity, listener).show();
     }
 
+    /**
+     * Scans codes one after another until the returned dialog is dismissed, e.g. with the back
+     * key. Each new code is passed to the listener once; a code still in view, or seen again
+     * shortly after, is not reported again.
+     */
+    public static CaptureDialog getQRCodes(Activity activity, CaptureQRCodeListener listener) {
+        CaptureDialog dialog = new CaptureDialog(activity, listener);
+        dialog.setContinuous(true);
+        dialog.show();
+        return dialog;
+    }
+
     public interface CaptureQRCodeListener {
         public void onResult(String result);
     }
+
+    /**
+     * Implement this instead of {@link CaptureQRCodeListener} to also get a greyscale thumbnail of
+     * the scanned area. Only this method is called then. Rendering the thumbnail costs time on
+     * every successful scan, so it is only done for listeners which ask for it.
+     */
+    public interface CaptureQRCodeThumbnailListener extends CaptureQRCodeListener {
+        public void onResult(String result, Bitmap thumbnail);
+    }
 }
\ No newline at end of file
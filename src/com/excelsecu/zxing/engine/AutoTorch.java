@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2015 excelsecu authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.excelsecu.zxing.engine;
+
+/**
+ * Turns the torch on when frames stay too dark, and off again when they stay bright, from the
+ * luminance histogram the binarizer computes anyway. No extra pass over the frame is needed.
+ *
+ * The thresholds are far apart, and a level has to hold for a number of frames, so the torch
+ * doesn't flicker. With the torch on, auto exposure brings the frames back to mid grey, so it
+ * only goes off again when frames are bright even so. The same controller is shared by all
+ * decode threads.
+ */
+public final class AutoTorch {
+
+  /** Leave the torch as it is. */
+  static final int NO_CHANGE = 0;
+  /** Turn the torch on. */
+  static final int TURN_ON = 1;
+  /** Turn the torch off. */
+  static final int TURN_OFF = 2;
+
+  //@ch mean luminance, 0 - 255
+  private static final int DEFAULT_DARK_LUMINANCE = 40;
+  private static final int DEFAULT_BRIGHT_LUMINANCE = 160;
+  //@ch about a third of a second at 30 fps
+  private static final int DEFAULT_FRAMES_TO_SWITCH = 10;
+
+  private boolean enabled;
+  private boolean torchOn;
+  private int darkLuminance = DEFAULT_DARK_LUMINANCE;
+  private int brightLuminance = DEFAULT_BRIGHT_LUMINANCE;
+  private int framesToSwitch = DEFAULT_FRAMES_TO_SWITCH;
+  // Frames in a row past the threshold for switching
+  private int consecutiveFrames;
+  private int lastLuminance = -1;
+  private long switches;
+
+  /**
+   * Takes one frame's histogram into account.
+   *
+   * @param buckets luminance histogram with equally wide buckets from black to white, e.g.
+   *  {@link com.google.zxing.common.GlobalHistogramBinarizer#getHistogram()}
+   * @return {@link #NO_CHANGE}, {@link #TURN_ON} or {@link #TURN_OFF}
+   */
+  synchronized int update(int[] buckets) {
+    if (!enabled) {
+      return NO_CHANGE;
+    }
+    int luminance = meanLuminance(buckets);
+    if (luminance < 0) {
+      // Nothing was sampled
+      return NO_CHANGE;
+    }
+    lastLuminance = luminance;
+    boolean pastThreshold = torchOn ? luminance > brightLuminance : luminance < darkLuminance;
+    if (!pastThreshold) {
+      consecutiveFrames = 0;
+      return NO_CHANGE;
+    }
+    if (++consecutiveFrames < framesToSwitch) {
+      return NO_CHANGE;
+    }
+    consecutiveFrames = 0;
+    torchOn = !torchOn;
+    switches++;
+    return torchOn ? TURN_ON : TURN_OFF;
+  }
+
+  /**
+   * @return mean luminance 0 - 255, or -1 for an empty histogram
+   */
+  static int meanLuminance(int[] buckets) {
+    long sum = 0L;
+    long count = 0L;
+    for (int i = 0; i < buckets.length; i++) {
+      sum += (long) buckets[i] * (2 * i + 1);
+      count += buckets[i];
+    }
+    if (count == 0L) {
+      return -1;
+    }
+    // Centre of the mean bucket, each bucket being 256 / buckets.length levels wide
+    return (int) (sum * 128L / (count * buckets.length));
+  }
+
+  /**
+   * @param enabled {@code true} to switch the torch by frame brightness
+   */
+  public synchronized void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+    consecutiveFrames = 0;
+  }
+
+  public synchronized boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Tells the controller which state the torch is in, e.g. after the camera was opened.
+   */
+  public synchronized void setTorchOn(boolean torchOn) {
+    this.torchOn = torchOn;
+    consecutiveFrames = 0;
+  }
+
+  public synchronized boolean isTorchOn() {
+    return torchOn;
+  }
+
+  /**
+   * @param darkLuminance mean luminance, 0 - 255, below which the torch goes on
+   * @param brightLuminance mean luminance above which it goes off again
+   */
+  public synchronized void setThresholds(int darkLuminance, int brightLuminance) {
+    if (darkLuminance < 0 || brightLuminance > 255 || darkLuminance >= brightLuminance) {
+      throw new IllegalArgumentException("Need 0 <= dark < bright <= 255");
+    }
+    this.darkLuminance = darkLuminance;
+    this.brightLuminance = brightLuminance;
+  }
+
+  /**
+   * @param frames how many frames in a row must be past a threshold to switch
+   */
+  public synchronized void setFramesToSwitch(int frames) {
+    framesToSwitch = Math.max(1, frames);
+  }
+
+  /**
+   * @return mean luminance of the last frame, or -1 if none was seen
+   */
+  public synchronized int getLastLuminance() {
+    return lastLuminance;
+  }
+
+  public synchronized long getSwitches() {
+    return switches;
+  }
+
+  /**
+   * Forgets the frames seen so far, e.g. when the camera is restarted. Counters are kept.
+   */
+  synchronized void reset() {
+    consecutiveFrames = 0;
+    lastLuminance = -1;
+  }
+
+}
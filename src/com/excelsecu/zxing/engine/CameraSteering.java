@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2015 excelsecu authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.excelsecu.zxing.engine;
+
+/**
+ * Steers the camera onto the code from where the decoder found its finder patterns: focus and
+ * metering go to the code instead of the middle of the frame, the camera zooms in while modules
+ * are too small to sample and out again while the code doesn't fit in the framing rect.
+ *
+ * Every change is rate limited and the area only moves once the code has moved noticeably,
+ * since each camera parameter change costs a few frames. The same controller is shared by all
+ * decode threads.
+ */
+public final class CameraSteering {
+
+  /** Move focus and metering to the area given. */
+  static final int AREA = 1;
+  /** Zoom in one step. */
+  static final int ZOOM_IN = 2;
+  /** Zoom out one step. */
+  static final int ZOOM_OUT = 4;
+
+  //@ch below this the sampling grid can't be placed reliably
+  private static final float MIN_MODULE_SIZE = 2.0f;
+  //@ch finder centres are 3.5 modules in from the edge of the code
+  private static final float QUIET_MODULES = 4.0f;
+  private static final int FRAMES_TO_ZOOM = 5;
+  //@ch about 2 s at 30 fps
+  private static final int FRAMES_TO_UNZOOM = 60;
+  private static final long AREA_INTERVAL_MS = 1000L;
+  private static final long ZOOM_INTERVAL_MS = 800L;
+  // Fraction of the frame the code must move by before the area follows it
+  private static final float AREA_MOVE_FRACTION = 0.1f;
+
+  private boolean enabled = true;
+  private final float[] bounds = new float[4];
+  private float lastAreaCenterX = -1.0f;
+  private float lastAreaCenterY = -1.0f;
+  private long lastAreaTime;
+  private long lastZoomTime;
+  // Frames in a row asking for a zoom in, out, or with nothing found
+  private int smallFrames;
+  private int overflowFrames;
+  private int lostFrames;
+  // Steps zoomed in by us, so we only zoom back out as far
+  private int zoomSteps;
+  private long areaUpdates;
+  private long zoomIns;
+  private long zoomOuts;
+
+  /**
+   * Takes one decoded frame into account.
+   *
+   * @param points what the decoder found in the frame
+   * @param width width of the framing rect
+   * @param height height of the framing rect
+   * @param decoded whether the frame gave a result
+   * @param now current time in ms
+   * @param area receives left, top, right and bottom of the new focus and metering area, in
+   *  framing rect coordinates, if {@link #AREA} is returned
+   * @return {@link #AREA}, {@link #ZOOM_IN} and {@link #ZOOM_OUT} or'ed together, 0 for none
+   */
+  synchronized int update(RegionTracker.FramePoints points, int width, int height,
+                          boolean decoded, long now, float[] area) {
+    if (!enabled) {
+      return 0;
+    }
+    // A single point says little about where the code is
+    if (points.getCount() < 2) {
+      smallFrames = 0;
+      overflowFrames = 0;
+      if (++lostFrames >= FRAMES_TO_UNZOOM && zoomSteps > 0 && canZoom(now)) {
+        lostFrames = 0;
+        return zoomOut(now);
+      }
+      return 0;
+    }
+    lostFrames = 0;
+    points.getBounds(bounds);
+    float moduleSize = points.getModuleSize();
+    float pad = QUIET_MODULES * moduleSize;
+    float left = bounds[0] - pad;
+    float top = bounds[1] - pad;
+    float right = bounds[2] + pad;
+    float bottom = bounds[3] + pad;
+
+    int flags = 0;
+    float centerX = (left + right) / 2.0f;
+    float centerY = (top + bottom) / 2.0f;
+    // No area yet, or the code moved away from it
+    if (lastAreaCenterX < 0.0f
+        || (now - lastAreaTime >= AREA_INTERVAL_MS
+            && (Math.abs(centerX - lastAreaCenterX) > AREA_MOVE_FRACTION * width
+                || Math.abs(centerY - lastAreaCenterY) > AREA_MOVE_FRACTION * height))) {
+      area[0] = Math.max(0.0f, left);
+      area[1] = Math.max(0.0f, top);
+      area[2] = Math.min(width, right);
+      area[3] = Math.min(height, bottom);
+      lastAreaCenterX = centerX;
+      lastAreaCenterY = centerY;
+      lastAreaTime = now;
+      areaUpdates++;
+      flags |= AREA;
+    }
+
+    if (decoded || moduleSize <= 0.0f) {
+      // Only QR finder patterns tell the module size
+      smallFrames = 0;
+      overflowFrames = 0;
+      return flags;
+    }
+    boolean overflows = left < 0.0f || top < 0.0f || right > width || bottom > height;
+    if (overflows) {
+      smallFrames = 0;
+      overflowFrames++;
+    } else if (moduleSize < MIN_MODULE_SIZE) {
+      overflowFrames = 0;
+      smallFrames++;
+    } else {
+      smallFrames = 0;
+      overflowFrames = 0;
+    }
+    if (!canZoom(now)) {
+      return flags;
+    }
+    if (smallFrames >= FRAMES_TO_ZOOM) {
+      smallFrames = 0;
+      lastZoomTime = now;
+      zoomSteps++;
+      zoomIns++;
+      forgetArea();
+      flags |= ZOOM_IN;
+    } else if (overflowFrames >= FRAMES_TO_ZOOM && zoomSteps > 0) {
+      overflowFrames = 0;
+      flags |= zoomOut(now);
+    }
+    return flags;
+  }
+
+  private boolean canZoom(long now) {
+    return now - lastZoomTime >= ZOOM_INTERVAL_MS;
+  }
+
+  private int zoomOut(long now) {
+    lastZoomTime = now;
+    zoomSteps--;
+    zoomOuts++;
+    forgetArea();
+    return ZOOM_OUT;
+  }
+
+  // The view changed, so the area has to be sent again
+  private void forgetArea() {
+    lastAreaCenterX = -1.0f;
+    lastAreaCenterY = -1.0f;
+    lastAreaTime = 0L;
+  }
+
+  /**
+   * @param enabled {@code true} to steer focus, metering and zoom onto the code
+   */
+  public synchronized void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+    reset();
+  }
+
+  public synchronized boolean isEnabled() {
+    return enabled;
+  }
+
+  public synchronized long getAreaUpdates() {
+    return areaUpdates;
+  }
+
+  public synchronized long getZoomIns() {
+    return zoomIns;
+  }
+
+  public synchronized long getZoomOuts() {
+    return zoomOuts;
+  }
+
+  /**
+   * Forgets the frames seen so far, e.g. when the camera is restarted, which also resets its
+   * zoom. Counters are kept.
+   */
+  synchronized void reset() {
+    forgetArea();
+    lastZoomTime = 0L;
+    smallFrames = 0;
+    overflowFrames = 0;
+    lostFrames = 0;
+    zoomSteps = 0;
+  }
+
+}
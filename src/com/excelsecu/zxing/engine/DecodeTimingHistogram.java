@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2015 excelsecu authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.excelsecu.zxing.engine;
+
+import com.google.zxing.DecodeMetrics;
+
+/**
+ * {@link DecodeMetrics} which counts stage timings into fixed, power of two buckets: bucket 0
+ * holds times under 1 us, bucket i times from 2^(i-1) to 2^i us, and the last bucket everything
+ * above. Recording never allocates, so it can stay on in the field.
+ */
+public final class DecodeTimingHistogram implements DecodeMetrics {
+
+  //@ch the last bucket starts at 2^19 us, about half a second
+  static final int BUCKETS = 21;
+
+  private static final Stage[] STAGES = Stage.values();
+
+  private final long[][] counts = new long[STAGES.length][BUCKETS];
+  private final long[] totalNanos = new long[STAGES.length];
+  private final long[] maxNanos = new long[STAGES.length];
+
+  @Override
+  public void recordStage(Stage stage, long nanos) {
+    int bucket = bucketOf(nanos);
+    int index = stage.ordinal();
+    synchronized (this) {
+      counts[index][bucket]++;
+      totalNanos[index] += nanos;
+      if (nanos > maxNanos[index]) {
+        maxNanos[index] = nanos;
+      }
+    }
+  }
+
+  static int bucketOf(long nanos) {
+    long micros = nanos / 1000L;
+    if (micros <= 0L) {
+      return 0;
+    }
+    // Number of bits needed for the value, so 1 -> 1, 2..3 -> 2, 4..7 -> 3...
+    int bucket = 64 - Long.numberOfLeadingZeros(micros);
+    return Math.min(bucket, BUCKETS - 1);
+  }
+
+  /**
+   * @return upper bound in us of a bucket, or -1 for the last one which is open
+   */
+  static long bucketLimit(int bucket) {
+    return bucket == BUCKETS - 1 ? -1L : 1L << bucket;
+  }
+
+  /**
+   * @return how many times a stage was recorded
+   */
+  public synchronized long getCount(Stage stage) {
+    long count = 0L;
+    for (long bucketCount : counts[stage.ordinal()]) {
+      count += bucketCount;
+    }
+    return count;
+  }
+
+  /**
+   * @return a copy of the bucket counts of a stage
+   */
+  public synchronized long[] getBuckets(Stage stage) {
+    return counts[stage.ordinal()].clone();
+  }
+
+  public synchronized void clear() {
+    for (int i = 0; i < STAGES.length; i++) {
+      for (int j = 0; j < BUCKETS; j++) {
+        counts[i][j] = 0L;
+      }
+      totalNanos[i] = 0L;
+      maxNanos[i] = 0L;
+    }
+  }
+
+  /**
+   * @return one line per recorded stage with count, mean, median, 90th percentile and max in ms,
+   *  percentiles being the upper bound of their bucket, or max if lower
+   */
+  public synchronized String dump() {
+    StringBuilder result = new StringBuilder();
+    for (Stage stage : STAGES) {
+      int index = stage.ordinal();
+      long count = getCount(stage);
+      if (count == 0L) {
+        continue;
+      }
+      result.append(stage).append(": n=").append(count)
+          .append(" mean=").append(toMillis(totalNanos[index] / count))
+          .append(" p50<=").append(percentile(index, count, 50))
+          .append(" p90<=").append(percentile(index, count, 90))
+          .append(" max=").append(toMillis(maxNanos[index]))
+          .append('\n');
+    }
+    return result.toString();
+  }
+
+  private String percentile(int index, long count, int percent) {
+    long wanted = (count * percent + 99) / 100;
+    long seen = 0L;
+    for (int bucket = 0; bucket < BUCKETS; bucket++) {
+      seen += counts[index][bucket];
+      if (seen >= wanted) {
+        // No bucket bound says more than the slowest time actually seen
+        long limit = bucketLimit(bucket);
+        return toMillis(limit < 0L ? maxNanos[index] : Math.min(limit * 1000L, maxNanos[index]));
+      }
+    }
+    return toMillis(maxNanos[index]);
+  }
+
+  private static String toMillis(long nanos) {
+    // Two decimals are plenty and cheaper than String.format
+    long hundredths = nanos / 10000L;
+    long fraction = hundredths % 100L;
+    return (hundredths / 100L) + (fraction < 10L ? ".0" : ".") + fraction;
+  }
+
+}
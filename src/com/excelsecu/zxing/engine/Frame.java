@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2015 excelsecu authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.excelsecu.zxing.engine;
+
+/**
+ * One NV21 (or any format with a leading Y plane) frame, as captured.
+ */
+public final class Frame {
+
+  private final byte[] data;
+  private final int width;
+  private final int height;
+  private final long timestamp;
+
+  /**
+   * @param data the frame, Y plane first
+   * @param width width of the frame
+   * @param height height of the frame
+   * @param timestamp when it was captured, in ms
+   */
+  public Frame(byte[] data, int width, int height, long timestamp) {
+    this.data = data;
+    this.width = width;
+    this.height = height;
+    this.timestamp = timestamp;
+  }
+
+  public byte[] getData() {
+    return data;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2015 excelsecu authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.excelsecu.zxing.engine;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * Skips frames which look the same as the last one that failed to decode, e.g. while the phone is
+ * held still over a blank area. Each frame is reduced to a fingerprint of
+ * {@link #GRID} x {@link #GRID} mean luma values, and frames whose fingerprint is within the
+ * threshold of the last failed one are not decoded. The same detector is shared by all decode
+ * threads.
+ */
+public final class FrameChangeDetector {
+
+  static final int GRID = 16;
+  static final int FINGERPRINT_SIZE = GRID * GRID;
+
+  //@ch about 4x4 samples per grid cell, that's plenty to average out sensor noise
+  private static final int SAMPLES_PER_SIDE = GRID * 4;
+  private static final float DEFAULT_THRESHOLD = 4.0f;
+  //@ch decode now and then anyway, focus and exposure may have settled without much change
+  private static final int MAX_CONSECUTIVE_SKIPS = 10;
+
+  private final int[] lastFailed = new int[FINGERPRINT_SIZE];
+  private boolean hasLastFailed;
+  private boolean enabled = true;
+  private float threshold = DEFAULT_THRESHOLD;
+  private float lastDifference;
+  private int consecutiveSkips;
+  private long framesChecked;
+  private long framesSkipped;
+
+  /**
+   * @param fingerprint fingerprint of the frame, from {@link #fingerprint}
+   * @return {@code true} if the frame has changed enough since the last failed one to be decoded
+   */
+  synchronized boolean hasChanged(int[] fingerprint) {
+    if (!enabled || !hasLastFailed) {
+      return true;
+    }
+    framesChecked++;
+    int total = 0;
+    for (int i = 0; i < FINGERPRINT_SIZE; i++) {
+      total += Math.abs(fingerprint[i] - lastFailed[i]);
+    }
+    lastDifference = (float) total / FINGERPRINT_SIZE;
+    if (lastDifference >= threshold || consecutiveSkips >= MAX_CONSECUTIVE_SKIPS) {
+      consecutiveSkips = 0;
+      return true;
+    }
+    consecutiveSkips++;
+    framesSkipped++;
+    return false;
+  }
+
+  /**
+   * Remembers the fingerprint of a frame which was decoded without finding anything.
+   */
+  synchronized void decodeFailed(int[] fingerprint) {
+    System.arraycopy(fingerprint, 0, lastFailed, 0, FINGERPRINT_SIZE);
+    hasLastFailed = true;
+  }
+
+  /**
+   * Forgets the last failed frame, so the next frame is decoded whatever it looks like.
+   */
+  synchronized void reset() {
+    hasLastFailed = false;
+    consecutiveSkips = 0;
+  }
+
+  /**
+   * @param enabled {@code false} to decode every frame
+   */
+  public synchronized void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public synchronized boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * @param threshold mean difference in luma per grid cell, 0 to 255, below which a frame counts
+   *  as unchanged
+   */
+  public synchronized void setThreshold(float threshold) {
+    this.threshold = threshold;
+  }
+
+  public synchronized float getThreshold() {
+    return threshold;
+  }
+
+  /**
+   * @return mean difference per grid cell between the last checked frame and the last failed one
+   */
+  public synchronized float getLastDifference() {
+    return lastDifference;
+  }
+
+  public synchronized long getFramesChecked() {
+    return framesChecked;
+  }
+
+  public synchronized long getFramesSkipped() {
+    return framesSkipped;
+  }
+
+  /**
+   * Reduces a frame to the mean luma of each cell of a {@link #GRID} x {@link #GRID} grid,
+   * sampling only a few pixels per cell.
+   *
+   * @param source the crop which would be decoded
+   * @param fingerprint receives {@link #FINGERPRINT_SIZE} values, row by row
+   * @param counts scratch space for {@link #FINGERPRINT_SIZE} values
+   * @param rows {@code rows[0]} is the buffer rows are read into, replaced if it is too short
+   */
+  static void fingerprint(LuminanceSource source, int[] fingerprint, int[] counts,
+                          byte[][] rows) {
+    int width = source.getWidth();
+    int height = source.getHeight();
+    int xStep = Math.max(1, width / SAMPLES_PER_SIDE);
+    int yStep = Math.max(1, height / SAMPLES_PER_SIDE);
+    for (int i = 0; i < FINGERPRINT_SIZE; i++) {
+      fingerprint[i] = 0;
+      counts[i] = 0;
+    }
+    byte[] row = rows[0];
+    for (int y = yStep / 2; y < height; y += yStep) {
+      row = source.getRow(y, row);
+      int cellOffset = (y * GRID / height) * GRID;
+      for (int x = xStep / 2; x < width; x += xStep) {
+        int cell = cellOffset + x * GRID / width;
+        fingerprint[cell] += row[x] & 0xff;
+        counts[cell]++;
+      }
+    }
+    rows[0] = row;
+    for (int i = 0; i < FINGERPRINT_SIZE; i++) {
+      if (counts[i] > 0) {
+        fingerprint[i] /= counts[i];
+      }
+    }
+  }
+
+}
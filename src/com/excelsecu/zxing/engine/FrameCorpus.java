@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2015 excelsecu authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.excelsecu.zxing.engine;
+
+import com.google.zxing.ByteBufferLuminanceSource;
+import com.google.zxing.LuminanceSource;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maps a corpus recorded by {@link FrameCorpusWriter} and hands out its frames by number.
+ * {@link #getLuminanceSource} reads straight from the mapping, so a benchmark over the corpus
+ * measures the decoder and nothing else.
+ */
+public final class FrameCorpus implements Closeable {
+
+  private final RandomAccessFile file;
+  private final MappedByteBuffer buffer;
+  private final long[] offsets;
+
+  public FrameCorpus(File corpus) throws IOException {
+    file = new RandomAccessFile(corpus, "r");
+    try {
+      long length = file.length();
+      if (length > Integer.MAX_VALUE) {
+        throw new IOException("Corpus too large to map: " + length + " bytes");
+      }
+      buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0L, length);
+      if (length < FrameCorpusWriter.FILE_HEADER_SIZE
+          || buffer.getInt(0) != FrameCorpusWriter.MAGIC) {
+        throw new IOException("Not a frame corpus: " + corpus);
+      }
+      if (buffer.getInt(4) != FrameCorpusWriter.VERSION) {
+        throw new IOException("Unsupported corpus version " + buffer.getInt(4));
+      }
+      offsets = readIndex();
+    } catch (IOException ioe) {
+      file.close();
+      throw ioe;
+    }
+  }
+
+  /**
+   * Reads the index written on close, or walks the frame headers if there is none.
+   */
+  private long[] readIndex() {
+    int limit = buffer.limit();
+    int trailer = limit - FrameCorpusWriter.INDEX_TRAILER_SIZE;
+    if (trailer >= FrameCorpusWriter.FILE_HEADER_SIZE
+        && buffer.getInt(trailer + 12) == FrameCorpusWriter.INDEX_MAGIC) {
+      int count = buffer.getInt(trailer);
+      long indexOffset = buffer.getLong(trailer + 4);
+      if (count >= 0 && indexOffset + 8L * count == trailer) {
+        long[] index = new long[count];
+        for (int i = 0; i < count; i++) {
+          index[i] = buffer.getLong((int) indexOffset + 8 * i);
+        }
+        return index;
+      }
+    }
+    // Not closed properly; keep every frame that was written out in full
+    List<Long> found = new ArrayList<>();
+    long offset = FrameCorpusWriter.FILE_HEADER_SIZE;
+    while (offset + FrameCorpusWriter.FRAME_HEADER_SIZE <= limit) {
+      int length = buffer.getInt((int) offset + 36);
+      long next = offset + FrameCorpusWriter.FRAME_HEADER_SIZE + length;
+      if (length < 0 || next > limit) {
+        break;
+      }
+      found.add(offset);
+      offset = next;
+    }
+    long[] index = new long[found.size()];
+    for (int i = 0; i < index.length; i++) {
+      index[i] = found.get(i);
+    }
+    return index;
+  }
+
+  public int getFrameCount() {
+    return offsets.length;
+  }
+
+  public long getTimestamp(int frame) {
+    return buffer.getLong(header(frame));
+  }
+
+  public int getWidth(int frame) {
+    return buffer.getInt(header(frame) + 8);
+  }
+
+  public int getHeight(int frame) {
+    return buffer.getInt(header(frame) + 12);
+  }
+
+  /**
+   * @return left, top, width and height of the framing rect the frame was decoded in
+   */
+  public int[] getFramingRect(int frame) {
+    int header = header(frame);
+    return new int[] {
+        buffer.getInt(header + 16),
+        buffer.getInt(header + 20),
+        buffer.getInt(header + 24),
+        buffer.getInt(header + 28)
+    };
+  }
+
+  /**
+   * @return clockwise rotation in degrees which turns the frame upright on screen
+   */
+  public int getOrientation(int frame) {
+    return buffer.getInt(header(frame) + 32);
+  }
+
+  /**
+   * @return a view of the frame's framing rect over the mapping, nothing is copied
+   */
+  public LuminanceSource getLuminanceSource(int frame) {
+    int header = header(frame);
+    int[] rect = getFramingRect(frame);
+    int width = getWidth(frame);
+    return new ByteBufferLuminanceSource(buffer, header + FrameCorpusWriter.FRAME_HEADER_SIZE,
+        width, getHeight(frame), width, 1, rect[0], rect[1], rect[2], rect[3]);
+  }
+
+  /**
+   * Copies a frame out of the mapping, to replay it with {@link ReplayFrameSource}. Crop it with
+   * a {@link RectFrameCropper} for {@link #getFramingRect}.
+   */
+  public Frame getFrame(int frame) {
+    int header = header(frame);
+    byte[] data = new byte[buffer.getInt(header + 36)];
+    ByteBuffer view = buffer.duplicate();
+    view.position(header + FrameCorpusWriter.FRAME_HEADER_SIZE);
+    view.get(data);
+    return new Frame(data, getWidth(frame), getHeight(frame), getTimestamp(frame));
+  }
+
+  /**
+   * @return every frame, copied, in the order they were recorded
+   */
+  public List<Frame> getFrames() {
+    List<Frame> frames = new ArrayList<>(offsets.length);
+    for (int i = 0; i < offsets.length; i++) {
+      frames.add(getFrame(i));
+    }
+    return frames;
+  }
+
+  @Override
+  public void close() throws IOException {
+    // The mapping stays valid until it is collected
+    file.close();
+  }
+
+  private int header(int frame) {
+    if (frame < 0 || frame >= offsets.length) {
+      throw new IndexOutOfBoundsException("Frame " + frame + " of " + offsets.length);
+    }
+    return (int) offsets[frame];
+  }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2015 excelsecu authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.excelsecu.zxing.engine;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Records raw preview frames into a corpus file which {@link FrameCorpus} maps back in, to
+ * replay a session off the device.
+ *
+ * The file is a header, the frames one after another, then an index written by {@link #close}:
+ *
+ * <pre>
+ * header:  int MAGIC, int VERSION, int flags (FLAG_LUMA_ONLY)
+ * frame:   long timestamp, int width, int height,
+ *          int left, int top, int cropWidth, int cropHeight, int orientation,
+ *          int length, byte[length] data
+ * index:   long[count] frame offsets, int count, long index offset, int INDEX_MAGIC
+ * </pre>
+ *
+ * All big endian. Without the index, e.g. if the app was killed, the frames are found by
+ * walking the headers instead.
+ */
+public final class FrameCorpusWriter implements Closeable {
+
+  static final int MAGIC = 0x5A584643; // "ZXFC"
+  static final int INDEX_MAGIC = 0x5A584649; // "ZXFI"
+  static final int VERSION = 1;
+  static final int FLAG_LUMA_ONLY = 1;
+  static final int FILE_HEADER_SIZE = 12;
+  static final int FRAME_HEADER_SIZE = 40;
+  static final int INDEX_TRAILER_SIZE = 16;
+
+  private final DataOutputStream out;
+  private final boolean lumaOnly;
+  private long position;
+  private long[] offsets = new long[64];
+  private int count;
+  private boolean closed;
+
+  /**
+   * @param file the corpus to create, replacing any file already there
+   * @param lumaOnly {@code true} to keep just the Y plane, which is all the decoder reads and
+   *  two thirds of an NV21 frame
+   */
+  public FrameCorpusWriter(File file, boolean lumaOnly) throws IOException {
+    this.lumaOnly = lumaOnly;
+    out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(lumaOnly ? FLAG_LUMA_ONLY : 0);
+    position = FILE_HEADER_SIZE;
+  }
+
+  /**
+   * Appends a frame. May be called from any thread.
+   *
+   * @param data the frame as captured, Y plane first
+   * @param width width of the frame
+   * @param height height of the frame
+   * @param timestamp when it was captured, in ms
+   * @param left left of the framing rect, in frame coordinates
+   * @param top top of the framing rect, in frame coordinates
+   * @param cropWidth width of the framing rect
+   * @param cropHeight height of the framing rect
+   * @param orientation clockwise rotation in degrees which turns the frame upright on screen
+   */
+  public synchronized void append(byte[] data, int width, int height, long timestamp,
+                                  int left, int top, int cropWidth, int cropHeight,
+                                  int orientation) throws IOException {
+    if (closed) {
+      throw new IOException("Corpus is closed");
+    }
+    int length = lumaOnly ? width * height : data.length;
+    if (length > data.length) {
+      throw new IllegalArgumentException("Frame is smaller than " + width + "x" + height);
+    }
+    if (count == offsets.length) {
+      long[] grown = new long[count * 2];
+      System.arraycopy(offsets, 0, grown, 0, count);
+      offsets = grown;
+    }
+    offsets[count++] = position;
+    out.writeLong(timestamp);
+    out.writeInt(width);
+    out.writeInt(height);
+    out.writeInt(left);
+    out.writeInt(top);
+    out.writeInt(cropWidth);
+    out.writeInt(cropHeight);
+    out.writeInt(orientation);
+    out.writeInt(length);
+    out.write(data, 0, length);
+    position += FRAME_HEADER_SIZE + length;
+  }
+
+  public synchronized int getFrameCount() {
+    return count;
+  }
+
+  /**
+   * Writes the index and closes the file.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      for (int i = 0; i < count; i++) {
+        out.writeLong(offsets[i]);
+      }
+      out.writeInt(count);
+      out.writeLong(position);
+      out.writeInt(INDEX_MAGIC);
+    } finally {
+      out.close();
+    }
+  }
+
+}
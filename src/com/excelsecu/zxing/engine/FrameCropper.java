@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2015 excelsecu authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.excelsecu.zxing.engine;
+
+import com.google.zxing.PlanarYUVLuminanceSource;
+
+/**
+ * Picks the part of a frame to decode, i.e. the framing rect.
+ */
+public interface FrameCropper {
+
+  /**
+   * @return the part of {@code frame} to decode, or {@code null} if there is none. Its
+   *  coordinates are those the result points come back in.
+   */
+  PlanarYUVLuminanceSource crop(Frame frame);
+
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2015 excelsecu authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.excelsecu.zxing.engine;
+
+/**
+ * Where a {@link ScanEngine} gets its frames, e.g. the camera or a recording. Frames are pulled:
+ * the engine only asks for one when a worker is idle, so a source should hand out its newest
+ * frame and drop older ones rather than queue them.
+ */
+public interface FrameSource {
+
+  interface Callback {
+    void onFrame(Frame frame);
+  }
+
+  /**
+   * Asks for the next frame. It is passed to {@code callback} exactly once, on any thread, but
+   * not from within this call.
+   */
+  void requestFrame(Callback callback);
+
+  /**
+   * Gives a frame back once the engine is done with it, so its buffer can be reused.
+   */
+  void releaseFrame(Frame frame);
+
+  /**
+   * Frames keep coming out blurred; focus again if possible.
+   */
+  void requestFocus();
+
+  /**
+   * Turns the torch on or off, if there is one.
+   */
+  void setTorch(boolean on);
+
+  /**
+   * Focuses and meters on an area of the framing rect, if the camera can.
+   */
+  void setFocusArea(float left, float top, float right, float bottom);
+
+  /**
+   * Zooms in or out by one step, if the camera can.
+   */
+  void stepZoom(boolean in);
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2015 excelsecu authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.excelsecu.zxing.engine;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Results seen recently in continuous mode, so a code held in front of the camera is reported
+ * once and not on every frame. A result counts as a repeat if it was seen less than the window
+ * ago; seeing it again restarts its window. At most a fixed number of results are remembered, the
+ * ones seen longest ago are forgotten first.
+ */
+final class RecentResults {
+
+  private final Map<String,Long> lastSeen;
+  private long window;
+
+  /**
+   * @param maxSize how many different results to remember at most
+   * @param window how long in ms a result counts as a repeat after it was last seen
+   */
+  RecentResults(final int maxSize, long window) {
+    // Kept in order of when each result was last seen, oldest first
+    lastSeen = new LinkedHashMap<String,Long>() {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String,Long> eldest) {
+        return size() > maxSize;
+      }
+    };
+    this.window = window;
+  }
+
+  void setWindow(long window) {
+    this.window = window;
+  }
+
+  /**
+   * @param text the decoded text
+   * @param time when it was seen, in ms
+   * @return {@code true} if it was not seen within the window before {@code time}
+   */
+  boolean add(String text, long time) {
+    Iterator<Long> oldest = lastSeen.values().iterator();
+    while (oldest.hasNext() && time - oldest.next() >= window) {
+      oldest.remove();
+    }
+    // Remove first so it moves to the end
+    Long previous = lastSeen.remove(text);
+    lastSeen.put(text, time);
+    return previous == null;
+  }
+
+  void clear() {
+    lastSeen.clear();
+  }
+
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2015 excelsecu authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.excelsecu.zxing.engine;
+
+import com.google.zxing.PlanarYUVLuminanceSource;
+
+/**
+ * {@link FrameCropper} for a fixed rect in frame coordinates, used as is without rotation.
+ */
+public final class RectFrameCropper implements FrameCropper {
+
+  private final int left;
+  private final int top;
+  private final int width;
+  private final int height;
+
+  public RectFrameCropper(int left, int top, int width, int height) {
+    this.left = left;
+    this.top = top;
+    this.width = width;
+    this.height = height;
+  }
+
+  @Override
+  public PlanarYUVLuminanceSource crop(Frame frame) {
+    if (left + width > frame.getWidth() || top + height > frame.getHeight()) {
+      return null;
+    }
+    return new PlanarYUVLuminanceSource(frame.getData(), frame.getWidth(), frame.getHeight(),
+        left, top, width, height, false);
+  }
+
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2015 excelsecu authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.excelsecu.zxing.engine;
+
+import com.google.zxing.ResultPoint;
+import com.google.zxing.ResultPointCallback;
+import com.google.zxing.qrcode.detector.FinderPattern;
+
+/**
+ * Remembers where finder patterns were seen recently, so the next frame only needs to be
+ * searched in a padded window around them instead of the whole framing rect. After
+ * {@link #MAX_MISSES} frames in a row without a result in the window, the whole framing rect is
+ * searched again.
+ *
+ * Coordinates are those of the source built for the whole framing rect. The same tracker is
+ * shared by all decode threads; each of them collects the points of its own frame with a
+ * {@link FramePoints}.
+ */
+public final class RegionTracker {
+
+  private static final int MAX_MISSES = 5;
+  //@ch a window this big doesn't save enough to be worth the risk of cutting the code off
+  private static final float MAX_REGION_AREA = 0.7f;
+  //@ch in pixels, a single point still gets a window a small code fits in
+  private static final int MIN_PADDING = 40;
+
+  private boolean enabled = true;
+  private boolean hasRegion;
+  private int regionLeft;
+  private int regionTop;
+  private int regionRight;
+  private int regionBottom;
+  private int misses;
+  private long framesInRegion;
+  private long framesInFull;
+
+  /**
+   * Picks the part of the next frame to decode.
+   *
+   * @param width width of the source for the whole framing rect
+   * @param height height of the source for the whole framing rect
+   * @param region receives left, top, width and height of the window if there is one
+   * @return {@code true} if only {@code region} should be decoded, {@code false} for the whole
+   *  source
+   */
+  synchronized boolean getRegion(int width, int height, int[] region) {
+    if (enabled && hasRegion) {
+      int left = Math.max(0, regionLeft);
+      int top = Math.max(0, regionTop);
+      int right = Math.min(width, regionRight);
+      int bottom = Math.min(height, regionBottom);
+      int regionWidth = right - left;
+      int regionHeight = bottom - top;
+      if (regionWidth > 0 && regionHeight > 0
+          && regionWidth * regionHeight < MAX_REGION_AREA * width * height) {
+        region[0] = left;
+        region[1] = top;
+        region[2] = regionWidth;
+        region[3] = regionHeight;
+        framesInRegion++;
+        return true;
+      }
+    }
+    framesInFull++;
+    return false;
+  }
+
+  /**
+   * Updates the window once a frame has been decoded.
+   *
+   * @param inRegion whether only the window from {@link #getRegion} was decoded
+   * @param decoded whether a barcode was found
+   * @param points points seen while decoding the frame
+   */
+  synchronized void frameDone(boolean inRegion, boolean decoded, FramePoints points) {
+    if (decoded) {
+      misses = 0;
+    } else if (inRegion) {
+      misses++;
+      if (misses >= MAX_MISSES) {
+        // Lost it; search the whole framing rect next time
+        misses = 0;
+        hasRegion = false;
+        return;
+      }
+    } else if (points.count > 0) {
+      misses = 0;
+    }
+    if (points.count > 0) {
+      // Pad by the size of what was seen, so a code is still inside the window if only part of
+      // its finder patterns were found or it moved a little
+      int padding = Math.max(MIN_PADDING,
+          (int) Math.max(points.maxX - points.minX, points.maxY - points.minY));
+      regionLeft = (int) points.minX - padding;
+      regionTop = (int) points.minY - padding;
+      regionRight = (int) points.maxX + padding + 1;
+      regionBottom = (int) points.maxY + padding + 1;
+      hasRegion = true;
+    }
+  }
+
+  synchronized void reset() {
+    hasRegion = false;
+    misses = 0;
+  }
+
+  /**
+   * @param enabled {@code false} to always decode the whole framing rect
+   */
+  public synchronized void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public synchronized boolean isEnabled() {
+    return enabled;
+  }
+
+  public synchronized long getFramesInRegion() {
+    return framesInRegion;
+  }
+
+  public synchronized long getFramesInFull() {
+    return framesInFull;
+  }
+
+  /**
+   * Points found while decoding one frame. It sits between the decoder and the real
+   * {@link ResultPointCallback}: points are moved from window coordinates back to those of the
+   * whole framing rect before being passed on, and their bounding box is kept for
+   * {@link #frameDone}. Each decode thread has its own.
+   */
+  static final class FramePoints implements ResultPointCallback {
+
+    private final ResultPointCallback delegate;
+    private float offsetX;
+    private float offsetY;
+    private int count;
+    private float minX;
+    private float minY;
+    private float maxX;
+    private float maxY;
+    private float moduleSizeSum;
+    private int finderPatterns;
+
+    FramePoints(ResultPointCallback delegate) {
+      this.delegate = delegate;
+    }
+
+    /**
+     * Starts collecting the points of a new frame.
+     *
+     * @param offsetX left of the decoded window in the whole framing rect
+     * @param offsetY top of the decoded window in the whole framing rect
+     */
+    void startFrame(int offsetX, int offsetY) {
+      this.offsetX = offsetX;
+      this.offsetY = offsetY;
+      count = 0;
+      moduleSizeSum = 0.0f;
+      finderPatterns = 0;
+    }
+
+    /**
+     * @return mean estimated module size of the finder patterns seen, or 0 if there were none
+     */
+    float getModuleSize() {
+      return finderPatterns == 0 ? 0.0f : moduleSizeSum / finderPatterns;
+    }
+
+    /**
+     * @return how many points were found in the current frame
+     */
+    int getCount() {
+      return count;
+    }
+
+    /**
+     * @param bounds receives left, top, right and bottom of the points found, in framing rect
+     *  coordinates; unchanged if there were none
+     */
+    void getBounds(float[] bounds) {
+      if (count == 0) {
+        return;
+      }
+      bounds[0] = minX;
+      bounds[1] = minY;
+      bounds[2] = maxX;
+      bounds[3] = maxY;
+    }
+
+    /**
+     * @return the point moved from window coordinates to those of the whole framing rect
+     */
+    ResultPoint translate(ResultPoint point) {
+      if (point == null || (offsetX == 0.0f && offsetY == 0.0f)) {
+        return point;
+      }
+      return new ResultPoint(point.getX() + offsetX, point.getY() + offsetY);
+    }
+
+    @Override
+    public void foundPossibleResultPoint(ResultPoint point) {
+      if (point instanceof FinderPattern) {
+        moduleSizeSum += ((FinderPattern) point).getEstimatedModuleSize();
+        finderPatterns++;
+      }
+      ResultPoint translated = translate(point);
+      float x = translated.getX();
+      float y = translated.getY();
+      if (count == 0) {
+        minX = maxX = x;
+        minY = maxY = y;
+      } else {
+        minX = Math.min(minX, x);
+        minY = Math.min(minY, y);
+        maxX = Math.max(maxX, x);
+        maxY = Math.max(maxY, y);
+      }
+      count++;
+      if (delegate != null) {
+        delegate.foundPossibleResultPoint(translated);
+      }
+    }
+
+  }
+
+}
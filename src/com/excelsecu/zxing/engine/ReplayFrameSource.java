@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2015 excelsecu authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.excelsecu.zxing.engine;
+
+import java.util.List;
+
+/**
+ * {@link FrameSource} which plays back recorded frames, to run the pipeline off the device.
+ *
+ * In real time mode each frame is "captured" when its timestamp comes around, relative to the
+ * first one, and like the camera only the newest captured frame is kept: frames nobody asked for
+ * in time are dropped. Otherwise every frame is handed out, each as soon as it is asked for.
+ * Frames are delivered on the replay thread.
+ */
+public final class ReplayFrameSource implements FrameSource, Runnable {
+
+  private final List<Frame> frames;
+  private final boolean realTime;
+  private Thread thread;
+  private Callback callback;
+  private Frame newestFrame;
+  private boolean stopped;
+  private boolean finished;
+  private long framesDelivered;
+  private long framesDropped;
+
+  /**
+   * @param frames the recording, in capture order
+   * @param realTime {@code true} to replay at the rate the frames were captured, {@code false}
+   *  to replay as fast as they are decoded
+   */
+  public ReplayFrameSource(List<Frame> frames, boolean realTime) {
+    this.frames = frames;
+    this.realTime = realTime;
+  }
+
+  /**
+   * Starts the replay thread. Call it after the engine has started so the first frames aren't
+   * dropped.
+   */
+  public synchronized void start() {
+    if (thread == null) {
+      thread = new Thread(this, "ReplayFrameSource");
+      thread.start();
+    }
+  }
+
+  public synchronized void stop() {
+    stopped = true;
+    notifyAll();
+  }
+
+  /**
+   * Waits until every frame has been captured and the newest one handed out.
+   *
+   * @return {@code false} if that didn't happen within {@code timeoutMs}
+   */
+  public synchronized boolean awaitFinished(long timeoutMs) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeoutMs;
+    while (!finished) {
+      long wait = deadline - System.currentTimeMillis();
+      if (wait <= 0L) {
+        return false;
+      }
+      wait(wait);
+    }
+    return true;
+  }
+
+  @Override
+  public synchronized void requestFrame(Callback callback) {
+    this.callback = callback;
+    notifyAll();
+  }
+
+  @Override
+  public void releaseFrame(Frame frame) {
+    // Recorded frames are never overwritten
+  }
+
+  @Override
+  public void requestFocus() {
+    // Nothing to focus
+  }
+
+  @Override
+  public void setTorch(boolean on) {
+    // Nothing to light
+  }
+
+  @Override
+  public void setFocusArea(float left, float top, float right, float bottom) {
+    // Frames are already recorded
+  }
+
+  @Override
+  public void stepZoom(boolean in) {
+    // Frames are already recorded
+  }
+
+  public synchronized long getFramesDelivered() {
+    return framesDelivered;
+  }
+
+  public synchronized long getFramesDropped() {
+    return framesDropped;
+  }
+
+  @Override
+  public void run() {
+    long startNanos = System.nanoTime();
+    long firstTimestamp = frames.isEmpty() ? 0L : frames.get(0).getTimestamp();
+    int next = 0;
+    while (true) {
+      Callback deliverTo = null;
+      Frame deliver = null;
+      synchronized (this) {
+        if (stopped) {
+          return;
+        }
+        long dueNanos = next < frames.size()
+            ? (frames.get(next).getTimestamp() - firstTimestamp) * 1000000L : 0L;
+        long waitNanos = dueNanos - (System.nanoTime() - startNanos);
+        if (next < frames.size() && (realTime ? waitNanos <= 0L : newestFrame == null)) {
+          // Captured; an older frame nobody asked for is gone
+          if (newestFrame != null) {
+            framesDropped++;
+          }
+          newestFrame = frames.get(next++);
+        } else if (callback != null && newestFrame != null) {
+          deliverTo = callback;
+          deliver = newestFrame;
+          callback = null;
+          newestFrame = null;
+          framesDelivered++;
+        } else if (next >= frames.size() && newestFrame == null) {
+          finished = true;
+          notifyAll();
+          return;
+        } else {
+          try {
+            if (realTime && next < frames.size()) {
+              long waitMillis = waitNanos / 1000000L;
+              wait(waitMillis, (int) (waitNanos - waitMillis * 1000000L));
+            } else {
+              wait();
+            }
+          } catch (InterruptedException ie) {
+            return;
+          }
+        }
+      }
+      if (deliver != null) {
+        deliverTo.onFrame(deliver);
+      }
+    }
+  }
+
+}
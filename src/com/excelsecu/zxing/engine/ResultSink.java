@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2015 excelsecu authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.excelsecu.zxing.engine;
+
+/**
+ * Where a {@link ScanEngine} delivers what it finds. Calls come from the engine's worker
+ * threads, one at a time and with the engine locked, so they should return quickly, e.g. by
+ * posting to another thread.
+ */
+public interface ResultSink {
+
+  /**
+   * A new barcode was found. Results come in the order their frames were captured.
+   */
+  void onResult(ScanResult result);
+
+  /**
+   * A frame has been processed, whether or not anything was found in it.
+   *
+   * @param frameNumber number of the frame, counting from 0 since {@link ScanEngine#start}
+   */
+  void onFrameDone(long frameNumber);
+
+}
@@ -0,0 +1,594 @@
+/*
+ * Copyright (C) 2015 excelsecu authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.excelsecu.zxing.engine;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.DecodeMetrics;
+import com.google.zxing.DecodeTimeoutException;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.ResultPointCallback;
+import com.google.zxing.common.Cancellation;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.LuminancePyramid;
+import com.google.zxing.common.StageTimer;
+import com.google.zxing.qrcode.decoder.Decoder;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * The scanning pipeline without any Android in it: frames are pulled from a {@link FrameSource},
+ * cropped, checked by the cheap gates, binarized and decoded on a pool of worker threads, and
+ * results go to a {@link ResultSink} in capture order.
+ *
+ * A frame is only requested when a worker is idle, and the source hands out its newest frame,
+ * so frames never queue up behind a slow decode. Successful decodes wait for older frames still
+ * being decoded, and the oldest result wins. In continuous mode every new result is delivered
+ * and repeats are dropped; otherwise scanning pauses after the first result.
+ *
+ * The engine can be started and stopped any number of times; its settings and gates carry over.
+ */
+public final class ScanEngine {
+
+  //@ch the main thread and the camera need some CPU too
+  private static final int MAX_WORKERS = 4;
+  private static final long IDLE = -1L;
+  //@ch a code held in view is reported again only after this long out of view
+  private static final long DEFAULT_DUPLICATE_WINDOW_MS = 5000L;
+  private static final int MAX_RECENT_RESULTS = 256;
+  //@ch stop() waits at most this long in total for the workers, a cancelled decode ends in ms
+  private static final long STOP_TIMEOUT_MS = 500L;
+
+  private enum State {
+    STOPPED,
+    SCANNING,
+    SUCCESS
+  }
+
+  private final FrameSource frameSource;
+  private final FrameCropper frameCropper;
+  private final ResultSink resultSink;
+  private final SharpnessGate sharpnessGate = new SharpnessGate();
+  private final AutoTorch autoTorch = new AutoTorch();
+  private final CameraSteering cameraSteering = new CameraSteering();
+  private final FrameChangeDetector frameChangeDetector = new FrameChangeDetector();
+  private final RegionTracker regionTracker = new RegionTracker();
+  private final RecentResults recentResults =
+      new RecentResults(MAX_RECENT_RESULTS, DEFAULT_DUPLICATE_WINDOW_MS);
+  private final FrameSource.Callback frameCallback = new FrameSource.Callback() {
+    @Override
+    public void onFrame(Frame frame) {
+      dispatchFrame(frame);
+    }
+  };
+  // Successful decodes waiting for an older frame which is still being decoded
+  private final TreeMap<Long,ScanResult> pendingResults = new TreeMap<>();
+
+  private int workerCount;
+  private boolean continuous;
+  private volatile boolean thumbnails;
+  private volatile int timeBudgetMs;
+  private volatile Map<DecodeHintType,?> hints;
+  private Worker[] workers;
+  // Number of the frame each worker is working on, or IDLE
+  private long[] decodingFrame;
+  private State state = State.STOPPED;
+  private long nextFrame;
+  private boolean frameRequested;
+
+  public ScanEngine(FrameSource frameSource, FrameCropper frameCropper, ResultSink resultSink) {
+    this.frameSource = frameSource;
+    this.frameCropper = frameCropper;
+    this.resultSink = resultSink;
+  }
+
+  /**
+   * @return one worker per core, up to {@link #MAX_WORKERS}
+   */
+  public static int getDefaultWorkerCount() {
+    int cores = Runtime.getRuntime().availableProcessors();
+    return Math.max(1, Math.min(cores, MAX_WORKERS));
+  }
+
+  /**
+   * Sets how many frames are decoded in parallel. Takes effect at the next {@link #prepare()}.
+   *
+   * @param count number of worker threads, 0 or less means {@link #getDefaultWorkerCount()}
+   */
+  public synchronized void setWorkerCount(int count) {
+    workerCount = count;
+  }
+
+  /**
+   * @return number of workers the next {@link #prepare()} starts
+   */
+  public synchronized int getWorkerCount() {
+    return workerCount > 0 ? workerCount : getDefaultWorkerCount();
+  }
+
+  /**
+   * @param continuous {@code true} to keep scanning after a result and drop repeats,
+   *  {@code false} to pause after the first result
+   */
+  public synchronized void setContinuous(boolean continuous) {
+    this.continuous = continuous;
+  }
+
+  public synchronized boolean isContinuous() {
+    return continuous;
+  }
+
+  /**
+   * In continuous mode, how long a result is dropped for after it was last seen.
+   *
+   * @param millis window in ms
+   */
+  public synchronized void setDuplicateWindow(long millis) {
+    recentResults.setWindow(millis);
+  }
+
+  /**
+   * @param thumbnails whether results come with a thumbnail of their frame
+   */
+  public void setThumbnails(boolean thumbnails) {
+    this.thumbnails = thumbnails;
+  }
+
+  /**
+   * Gives up on a frame which takes longer than this to decode, and moves on to the newest one.
+   * Noisy frames can keep the finder pattern search busy for hundreds of ms on slow devices.
+   *
+   * @param millis budget per frame in ms, 0 or less for none, the default
+   */
+  public void setTimeBudget(int millis) {
+    timeBudgetMs = millis;
+  }
+
+  public SharpnessGate getSharpnessGate() {
+    return sharpnessGate;
+  }
+
+  /**
+   * @return the controller which switches the torch by frame brightness, off by default
+   */
+  public AutoTorch getAutoTorch() {
+    return autoTorch;
+  }
+
+  /**
+   * @return the controller which steers focus, metering and zoom onto the code, on by default
+   */
+  public CameraSteering getCameraSteering() {
+    return cameraSteering;
+  }
+
+  public FrameChangeDetector getFrameChangeDetector() {
+    return frameChangeDetector;
+  }
+
+  public RegionTracker getRegionTracker() {
+    return regionTracker;
+  }
+
+  /**
+   * Starts the worker threads, which warm up the decoder while e.g. the camera is still opening.
+   * Does nothing if they are running already.
+   */
+  public synchronized void prepare() {
+    if (workers != null) {
+      return;
+    }
+    int count = getWorkerCount();
+    workers = new Worker[count];
+    decodingFrame = new long[count];
+    for (int i = 0; i < count; i++) {
+      workers[i] = new Worker(i);
+      workers[i].start();
+      decodingFrame[i] = IDLE;
+    }
+  }
+
+  /**
+   * Starts pulling frames and decoding them, preparing first if needed.
+   *
+   * @param hints hints for the reader; a {@link ResultPointCallback} gets points in the
+   *  coordinates of the source from {@link FrameCropper#crop}
+   */
+  public synchronized void start(Map<DecodeHintType,?> hints) {
+    prepare();
+    this.hints = hints;
+    if (state == State.STOPPED) {
+      nextFrame = 0L;
+      state = State.SCANNING;
+      requestFrame();
+    }
+  }
+
+  /**
+   * Carries on scanning after the first result when not in continuous mode.
+   */
+  public synchronized void restart() {
+    if (state == State.SUCCESS) {
+      state = State.SCANNING;
+      requestFrame();
+    }
+  }
+
+  /**
+   * Stops scanning and waits a little for the workers to finish the frames they have.
+   */
+  public void stop() {
+    Worker[] stopping;
+    synchronized (this) {
+      state = State.STOPPED;
+      stopping = workers;
+      workers = null;
+      if (stopping == null) {
+        return;
+      }
+      for (Worker worker : stopping) {
+        // Abandons a decode in progress within a row or so of the finder pattern search
+        worker.cancellation.cancel();
+        worker.interrupt();
+      }
+    }
+    long deadline = System.currentTimeMillis() + STOP_TIMEOUT_MS;
+    for (Worker worker : stopping) {
+      long wait = deadline - System.currentTimeMillis();
+      if (wait <= 0L) {
+        break;
+      }
+      try {
+        worker.join(wait);
+      } catch (InterruptedException e) {
+        // continue
+      }
+    }
+    synchronized (this) {
+      for (Worker worker : stopping) {
+        Frame frame = worker.frames.poll();
+        if (frame != null) {
+          frameSource.releaseFrame(frame);
+        }
+      }
+      pendingResults.clear();
+      frameRequested = false;
+      sharpnessGate.reset();
+      autoTorch.reset();
+      cameraSteering.reset();
+      frameChangeDetector.reset();
+      regionTracker.reset();
+      recentResults.clear();
+    }
+  }
+
+  /**
+   * Waits until no frame is being decoded, e.g. at the end of a replay.
+   *
+   * @return {@code false} if still busy after {@code timeoutMs}
+   */
+  public synchronized boolean awaitIdle(long timeoutMs) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeoutMs;
+    while (workers != null && oldestFrameDecoding() != Long.MAX_VALUE) {
+      long wait = deadline - System.currentTimeMillis();
+      if (wait <= 0L) {
+        return false;
+      }
+      wait(wait);
+    }
+    return true;
+  }
+
+  /**
+   * Asks the source for a frame if some worker is idle. Frames are only ever requested for an
+   * idle worker, so a stale frame never waits in a queue.
+   */
+  private void requestFrame() {
+    if (state == State.SCANNING && !frameRequested && idleWorker() >= 0) {
+      frameRequested = true;
+      frameSource.requestFrame(frameCallback);
+    }
+  }
+
+  private synchronized void dispatchFrame(Frame frame) {
+    frameRequested = false;
+    int index = idleWorker();
+    if (state != State.SCANNING || index < 0) {
+      frameSource.releaseFrame(frame);
+      return;
+    }
+    decodingFrame[index] = nextFrame++;
+    workers[index].frames.offer(frame);
+    requestFrame();
+  }
+
+  private synchronized void frameDone(Worker worker, ScanResult result) {
+    if (workers == null || workers[worker.index] != worker) {
+      // Left over from before stop()
+      return;
+    }
+    long frame = decodingFrame[worker.index];
+    decodingFrame[worker.index] = IDLE;
+    if (result != null && state == State.SCANNING) {
+      // Keep it until every older frame is done, so results come out in capture order
+      result.setFrameNumber(frame);
+      pendingResults.put(frame, result);
+    }
+    resultSink.onFrameDone(frame);
+    deliverResults();
+    requestFrame();
+    notifyAll();
+  }
+
+  private int idleWorker() {
+    if (workers == null) {
+      return -1;
+    }
+    for (int i = 0; i < decodingFrame.length; i++) {
+      if (decodingFrame[i] == IDLE) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private long oldestFrameDecoding() {
+    long oldest = Long.MAX_VALUE;
+    for (long frame : decodingFrame) {
+      if (frame != IDLE && frame < oldest) {
+        oldest = frame;
+      }
+    }
+    return oldest;
+  }
+
+  private void deliverResults() {
+    while (state == State.SCANNING && !pendingResults.isEmpty()
+        && pendingResults.firstKey() < oldestFrameDecoding()) {
+      ScanResult result = pendingResults.remove(pendingResults.firstKey());
+      if (!continuous) {
+        // One result is all we want; the rest are dropped
+        state = State.SUCCESS;
+        pendingResults.clear();
+      } else if (!recentResults.add(result.getResult().getText(),
+          result.getResult().getTimestamp())) {
+        continue;
+      }
+      resultSink.onResult(result);
+    }
+  }
+
+  /**
+   * Decodes the frames it is handed, one at a time. Readers and buffers are reused from one
+   * frame to the next.
+   */
+  private final class Worker extends Thread {
+
+    private final int index;
+    private final BlockingQueue<Frame> frames = new ArrayBlockingQueue<>(1);
+    private final MultiFormatReader multiFormatReader = new MultiFormatReader();
+    private final Cancellation cancellation = new Cancellation();
+    private final int[] fingerprint = new int[FrameChangeDetector.FINGERPRINT_SIZE];
+    private final int[] fingerprintCounts = new int[FrameChangeDetector.FINGERPRINT_SIZE];
+    // Row buffers for the checks before decoding, grown to the crop width as needed
+    private final byte[][] rows = new byte[3][];
+    private final int[] region = new int[4];
+    private final float[] focusArea = new float[4];
+    private final LuminancePyramid pyramid = new LuminancePyramid();
+    private boolean hasFingerprint;
+    private Map<DecodeHintType,?> readerHints;
+    private RegionTracker.FramePoints framePoints;
+    private DecodeMetrics metrics;
+
+    Worker(int index) {
+      super("ScanEngine-" + index);
+      this.index = index;
+    }
+
+    @Override
+    public void run() {
+      Decoder.warmUp();
+      while (true) {
+        Frame frame;
+        try {
+          frame = frames.take();
+        } catch (InterruptedException ie) {
+          return;
+        }
+        ScanResult result = null;
+        try {
+          result = decode(frame);
+        } finally {
+          // The frame goes back to the source, don't touch it after this
+          frameSource.releaseFrame(frame);
+          frameDone(this, result);
+        }
+      }
+    }
+
+    /**
+     * Sets the reader up again if the hints changed since the last frame.
+     */
+    private void setUpReader() {
+      Map<DecodeHintType,?> hints = ScanEngine.this.hints;
+      if (framePoints != null && hints == readerHints) {
+        return;
+      }
+      readerHints = hints;
+      // Points have to be moved out of the tracked region before anyone else sees them
+      Map<DecodeHintType,Object> trackingHints = new EnumMap<>(DecodeHintType.class);
+      ResultPointCallback callback = null;
+      if (hints != null) {
+        trackingHints.putAll(hints);
+        callback = (ResultPointCallback) hints.get(DecodeHintType.NEED_RESULT_POINT_CALLBACK);
+      }
+      framePoints = new RegionTracker.FramePoints(callback);
+      trackingHints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, framePoints);
+      trackingHints.put(DecodeHintType.CANCELLATION, cancellation);
+      trackingHints.put(DecodeHintType.LUMINANCE_PYRAMID, pyramid);
+      metrics = StageTimer.getMetrics(hints);
+      multiFormatReader.setHints(trackingHints);
+    }
+
+    private ScanResult decode(Frame frame) {
+      setUpReader();
+      long frameStart = StageTimer.start(metrics);
+      PlanarYUVLuminanceSource source = frameCropper.crop(frame);
+      StageTimer.stop(metrics, DecodeMetrics.Stage.LUMINANCE, frameStart);
+      if (source == null) {
+        return null;
+      }
+      if (!isWorthDecoding(source)) {
+        // Unchanged or too blurred
+        StageTimer.stop(metrics, DecodeMetrics.Stage.FRAME_SKIPPED, frameStart);
+        return null;
+      }
+
+      boolean inRegion = regionTracker.getRegion(source.getWidth(), source.getHeight(), region);
+      LuminanceSource decodeSource = source;
+      // Modules as big as in the last frame can be searched for on a downscaled copy
+      float moduleSize = framePoints.getModuleSize();
+      if (inRegion) {
+        decodeSource = source.crop(region[0], region[1], region[2], region[3]);
+        framePoints.startFrame(region[0], region[1]);
+      } else {
+        framePoints.startFrame(0, 0);
+      }
+      int levels = LuminancePyramid.levelsFor(moduleSize);
+      if (levels > 0) {
+        long pyramidStart = StageTimer.start(metrics);
+        pyramid.build(decodeSource, levels);
+        StageTimer.stop(metrics, DecodeMetrics.Stage.PYRAMID, pyramidStart);
+      } else {
+        pyramid.clear();
+      }
+      //@ch you can use HybridBinarizer or GlobalHistogramBinarizer
+      //but in most of situations HybridBinarizer is shit
+      GlobalHistogramBinarizer binarizer = new GlobalHistogramBinarizer(decodeSource);
+      BinaryBitmap bitmap = new BinaryBitmap(binarizer);
+      Result rawResult = null;
+      boolean timedOut = false;
+      // The budget is armed here rather than passed as a hint, so the hints stay as they are
+      int timeBudget = timeBudgetMs;
+      if (timeBudget > 0) {
+        cancellation.startBudget(timeBudget);
+      } else {
+        cancellation.clearBudget();
+      }
+      try {
+        rawResult = multiFormatReader.decodeWithState(bitmap);
+      } catch (DecodeTimeoutException dte) {
+        timedOut = true;
+      } catch (ReaderException re) {
+        // continue
+      } finally {
+        multiFormatReader.reset();
+      }
+      regionTracker.frameDone(inRegion, rawResult != null, framePoints);
+      switchTorch(binarizer.getHistogram());
+      steerCamera(source.getWidth(), source.getHeight(), rawResult != null);
+      if (rawResult != null) {
+        frameChangeDetector.reset();
+      } else if (hasFingerprint && !timedOut) {
+        // A frame given up on wasn't really tried, so the same view gets another go
+        frameChangeDetector.decodeFailed(fingerprint);
+      }
+      DecodeMetrics.Stage stage;
+      if (rawResult != null) {
+        stage = DecodeMetrics.Stage.FRAME_FOUND;
+      } else {
+        stage = timedOut ? DecodeMetrics.Stage.FRAME_TIMED_OUT : DecodeMetrics.Stage.FRAME_NOT_FOUND;
+      }
+      StageTimer.stop(metrics, stage, frameStart);
+      if (rawResult == null) {
+        return null;
+      }
+
+      ResultPoint[] points = rawResult.getResultPoints();
+      if (points != null) {
+        for (int i = 0; i < points.length; i++) {
+          points[i] = framePoints.translate(points[i]);
+        }
+      }
+      if (!thumbnails) {
+        return new ScanResult(rawResult, null, 0, 0, 0.0f);
+      }
+      int width = source.getThumbnailWidth();
+      return new ScanResult(rawResult, source.renderThumbnail(), width,
+          source.getThumbnailHeight(), (float) width / source.getWidth());
+    }
+
+    private void switchTorch(int[] histogram) {
+      switch (autoTorch.update(histogram)) {
+        case AutoTorch.TURN_ON:
+          frameSource.setTorch(true);
+          break;
+        case AutoTorch.TURN_OFF:
+          frameSource.setTorch(false);
+          break;
+        default:
+          break;
+      }
+    }
+
+    private void steerCamera(int width, int height, boolean decoded) {
+      int steering = cameraSteering.update(framePoints, width, height, decoded,
+          System.currentTimeMillis(), focusArea);
+      if ((steering & CameraSteering.AREA) != 0) {
+        frameSource.setFocusArea(focusArea[0], focusArea[1], focusArea[2], focusArea[3]);
+      }
+      if ((steering & CameraSteering.ZOOM_IN) != 0) {
+        frameSource.stepZoom(true);
+      } else if ((steering & CameraSteering.ZOOM_OUT) != 0) {
+        frameSource.stepZoom(false);
+      }
+    }
+
+    /**
+     * Cheap checks which spare decoding frames that can't give a new result.
+     */
+    private boolean isWorthDecoding(PlanarYUVLuminanceSource source) {
+      hasFingerprint = frameChangeDetector.isEnabled();
+      if (hasFingerprint) {
+        FrameChangeDetector.fingerprint(source, fingerprint, fingerprintCounts, rows);
+        if (!frameChangeDetector.hasChanged(fingerprint)) {
+          return false;
+        }
+      }
+      switch (sharpnessGate.check(source, rows)) {
+        case SharpnessGate.SKIP_AND_FOCUS:
+          frameSource.requestFocus();
+          return false;
+        case SharpnessGate.SKIP:
+          return false;
+        default:
+          return true;
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2015 excelsecu authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.excelsecu.zxing.engine;
+
+import com.google.zxing.Result;
+
+/**
+ * A barcode found by a {@link ScanEngine}, with a thumbnail of the frame if it was asked for.
+ * Result points are in the coordinates of the source from {@link FrameCropper#crop}.
+ */
+public final class ScanResult {
+
+  private final Result result;
+  private final int[] thumbnail;
+  private final int thumbnailWidth;
+  private final int thumbnailHeight;
+  private final float thumbnailScale;
+  private long frameNumber;
+
+  ScanResult(Result result, int[] thumbnail, int thumbnailWidth, int thumbnailHeight,
+             float thumbnailScale) {
+    this.result = result;
+    this.thumbnail = thumbnail;
+    this.thumbnailWidth = thumbnailWidth;
+    this.thumbnailHeight = thumbnailHeight;
+    this.thumbnailScale = thumbnailScale;
+  }
+
+  public Result getResult() {
+    return result;
+  }
+
+  /**
+   * @return greyscale ARGB pixels of the decoded source, row by row, or {@code null} if
+   *  thumbnails weren't asked for
+   */
+  public int[] getThumbnail() {
+    return thumbnail;
+  }
+
+  public int getThumbnailWidth() {
+    return thumbnailWidth;
+  }
+
+  public int getThumbnailHeight() {
+    return thumbnailHeight;
+  }
+
+  /**
+   * @return thumbnail size relative to the source
+   */
+  public float getThumbnailScale() {
+    return thumbnailScale;
+  }
+
+  public long getFrameNumber() {
+    return frameNumber;
+  }
+
+  void setFrameNumber(long frameNumber) {
+    this.frameNumber = frameNumber;
+  }
+
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2015 excelsecu authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.excelsecu.zxing.engine;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * Cheap check run before each decode which skips frames that are too blurred to contain a
+ * readable barcode, as happens during autofocus sweeps.
+ *
+ * The focus score is the variance of a Laplacian taken on a grid subsampled from the crop. The
+ * threshold adapts to the scene: a frame passes if it scores at least a fraction of the best
+ * recent score, which decays slowly so the gate follows the camera when it moves. The same gate
+ * is shared by all decode threads.
+ */
+public final class SharpnessGate {
+
+  /** Decode the frame. */
+  static final int DECODE = 0;
+  /** Skip the frame. */
+  static final int SKIP = 1;
+  /** Skip the frame, and the camera should focus again. */
+  static final int SKIP_AND_FOCUS = 2;
+
+  //@ch about 64x64 Laplacian samples, whatever the crop size
+  private static final int SAMPLES_PER_SIDE = 64;
+  //@ch per checked frame, the best score halves in about a second at 30 fps
+  private static final float PEAK_DECAY = 0.98f;
+  private static final float DEFAULT_RELATIVE_THRESHOLD = 0.4f;
+  //@ch below this even the best recent frame is flat, so the score says nothing
+  private static final float DEFAULT_MINIMUM_PEAK = 50.0f;
+  //@ch never starve the decoder for long, low contrast codes score low too
+  private static final int MAX_CONSECUTIVE_SKIPS = 8;
+  private static final int FOCUS_AFTER_SKIPS = 3;
+
+  private boolean enabled = true;
+  private float relativeThreshold = DEFAULT_RELATIVE_THRESHOLD;
+  private float minimumPeak = DEFAULT_MINIMUM_PEAK;
+  private float peakScore;
+  private float lastScore;
+  private int consecutiveSkips;
+  private long framesChecked;
+  private long framesSkipped;
+
+  /**
+   * Scores a frame and decides whether it is worth decoding.
+   *
+   * @param source the crop which would be decoded
+   * @param rows three row buffers of the calling thread, see {@link #measure}
+   * @return {@link #DECODE}, {@link #SKIP} or {@link #SKIP_AND_FOCUS}
+   */
+  int check(LuminanceSource source, byte[][] rows) {
+    synchronized (this) {
+      if (!enabled) {
+        return DECODE;
+      }
+    }
+    // Measuring doesn't need the lock, so decode threads don't wait on each other
+    float score = measure(source, rows);
+    synchronized (this) {
+      framesChecked++;
+      lastScore = score;
+      peakScore = Math.max(score, peakScore * PEAK_DECAY);
+      if (score >= peakScore * relativeThreshold
+          || peakScore < minimumPeak
+          || consecutiveSkips >= MAX_CONSECUTIVE_SKIPS) {
+        consecutiveSkips = 0;
+        return DECODE;
+      }
+      framesSkipped++;
+      consecutiveSkips++;
+      return consecutiveSkips == FOCUS_AFTER_SKIPS ? SKIP_AND_FOCUS : SKIP;
+    }
+  }
+
+  /**
+   * Forgets the best recent score, e.g. when the camera is restarted. Counters are kept.
+   */
+  synchronized void reset() {
+    peakScore = 0.0f;
+    consecutiveSkips = 0;
+  }
+
+  /**
+   * @param enabled {@code false} to decode every frame
+   */
+  public synchronized void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public synchronized boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * @param relativeThreshold fraction of the best recent score a frame needs to be decoded,
+   *  between 0 and 1
+   */
+  public synchronized void setRelativeThreshold(float relativeThreshold) {
+    if (relativeThreshold < 0.0f || relativeThreshold > 1.0f) {
+      throw new IllegalArgumentException("Relative threshold must be between 0 and 1");
+    }
+    this.relativeThreshold = relativeThreshold;
+  }
+
+  public synchronized float getRelativeThreshold() {
+    return relativeThreshold;
+  }
+
+  /**
+   * @param minimumPeak scores at or below which every frame is decoded, as the scene has too
+   *  little detail to judge focus by
+   */
+  public synchronized void setMinimumPeak(float minimumPeak) {
+    this.minimumPeak = minimumPeak;
+  }
+
+  public synchronized float getMinimumPeak() {
+    return minimumPeak;
+  }
+
+  /**
+   * @return focus score of the last checked frame
+   */
+  public synchronized float getLastScore() {
+    return lastScore;
+  }
+
+  /**
+   * @return score a frame currently needs to be decoded
+   */
+  public synchronized float getThreshold() {
+    return peakScore * relativeThreshold;
+  }
+
+  public synchronized long getFramesChecked() {
+    return framesChecked;
+  }
+
+  public synchronized long getFramesSkipped() {
+    return framesSkipped;
+  }
+
+  /**
+   * Variance of the 4-neighbour Laplacian over a grid of about
+   * {@link #SAMPLES_PER_SIDE} x {@link #SAMPLES_PER_SIDE} pixels. Sharp edges give large positive
+   * and negative values, blur flattens them towards 0.
+   *
+   * @param rows three buffers rows are read into, each replaced if it is too short
+   */
+  static float measure(LuminanceSource source, byte[][] rows) {
+    int width = source.getWidth();
+    int height = source.getHeight();
+    int step = Math.max(1, Math.min(width, height) / SAMPLES_PER_SIDE);
+    if (width <= 2 * step || height <= 2 * step) {
+      return 0.0f;
+    }
+    byte[] above = source.getRow(0, rows[0]);
+    byte[] row = source.getRow(step, rows[1]);
+    byte[] below = rows[2];
+    long sum = 0;
+    long sumSquares = 0;
+    int count = 0;
+    for (int y = step; y + step < height; y += step) {
+      below = source.getRow(y + step, below);
+      for (int x = step; x + step < width; x += step) {
+        int laplacian = 4 * (row[x] & 0xff)
+            - (row[x - step] & 0xff) - (row[x + step] & 0xff)
+            - (above[x] & 0xff) - (below[x] & 0xff);
+        sum += laplacian;
+        sumSquares += laplacian * laplacian;
+        count++;
+      }
+      // Roll the three rows down, reusing the oldest one for the next row read
+      byte[] temp = above;
+      above = row;
+      row = below;
+      below = temp;
+    }
+    rows[0] = above;
+    rows[1] = row;
+    rows[2] = below;
+    float mean = (float) sum / count;
+    return (float) sumSquares / count - mean * mean;
+  }
+
+}
@@ -28,13 +28,39 @@ import com.google.zxing.common.BitMatrix;
 public final class BinaryBitmap {
 
   private final Binarizer binarizer;
+  // The bitmap this one is the inverse of, if it was made by invert()
+  private final BinaryBitmap inverseOf;
   private BitMatrix matrix;
+  private BinaryBitmap inverse;
 
   public BinaryBitmap(Binarizer binarizer) {
     if (binarizer == null) {
       throw new IllegalArgumentException("Binarizer must be non-null.");
     }
     this.binarizer = binarizer;
+    this.inverseOf = null;
+  }
+
+  private BinaryBitmap(BinaryBitmap inverseOf) {
+    this.binarizer = inverseOf.binarizer;
+    this.inverseOf = inverseOf;
+  }
+
+  /**
+   * Returns this bitmap with black and white swapped, for light on dark codes. The thresholds
+   * found for this bitmap are reused: its matrix is binarized once and then just flipped, and
+   * no inverted copy of the luminance is made.
+   *
+   * @return the inverted bitmap, the same object on every call
+   */
+  public BinaryBitmap invert() {
+    if (inverseOf != null) {
+      return inverseOf;
+    }
+    if (inverse == null) {
+      inverse = new BinaryBitmap(this);
+    }
+    return inverse;
   }
 
   /**
@@ -63,7 +89,11 @@ public final class BinaryBitmap {
    * @throws NotFoundException if row can't be binarized
    */
   public BitArray getBlackRow(int y, BitArray row) throws NotFoundException {
-    return binarizer.getBlackRow(y, row);
+    BitArray blackRow = binarizer.getBlackRow(y, row);
+    if (inverseOf != null) {
+      blackRow.flip();
+    }
+    return blackRow;
   }
 
   /**
@@ -82,7 +112,12 @@ public final class BinaryBitmap {
     //    1D Reader finds a barcode before the 2D Readers run.
     // 2. This work will only be done once even if the caller installs multiple 2D Readers.
     if (matrix == null) {
-      matrix = binarizer.getBlackMatrix();
+      if (inverseOf != null) {
+        matrix = inverseOf.getBlackMatrix().clone();
+        matrix.flip();
+      } else {
+        matrix = binarizer.getBlackMatrix();
+      }
     }
     return matrix;
   }
@@ -105,6 +140,9 @@ public final class BinaryBitmap {
    * @return A cropped version of this object.
    */
   public BinaryBitmap crop(int left, int top, int width, int height) {
+    if (inverseOf != null) {
+      return inverseOf.crop(left, top, width, height).invert();
+    }
     LuminanceSource newSource = binarizer.getLuminanceSource().crop(left, top, width, height);
     return new BinaryBitmap(binarizer.createBinarizer(newSource));
   }
@@ -123,6 +161,9 @@ public final class BinaryBitmap {
    * @return A rotated version of this object.
    */
   public BinaryBitmap rotateCounterClockwise() {
+    if (inverseOf != null) {
+      return inverseOf.rotateCounterClockwise().invert();
+    }
     LuminanceSource newSource = binarizer.getLuminanceSource().rotateCounterClockwise();
     return new BinaryBitmap(binarizer.createBinarizer(newSource));
   }
@@ -134,6 +175,9 @@ public final class BinaryBitmap {
    * @return A rotated version of this object.
    */
   public BinaryBitmap rotateCounterClockwise45() {
+    if (inverseOf != null) {
+      return inverseOf.rotateCounterClockwise45().invert();
+    }
     LuminanceSource newSource = binarizer.getLuminanceSource().rotateCounterClockwise45();
     return new BinaryBitmap(binarizer.createBinarizer(newSource));
   }
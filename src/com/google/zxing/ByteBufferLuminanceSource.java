@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2015 excelsecu authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A luminance plane in a {@link ByteBuffer}, heap, direct or memory mapped, read where it is.
+ * Rows may be padded and pixels interleaved with other channels, as given by the row and pixel
+ * stride, e.g. the Y plane of a YUV_420_888 image or a frame handed over from native code.
+ *
+ * The buffer's own position and limit are left alone. Each source reads through its own view
+ * of the buffer, so different sources over the same buffer may be used on different threads.
+ */
+public final class ByteBufferLuminanceSource extends LuminanceSource {
+
+  private final ByteBuffer buffer;
+  private final int offset;
+  private final int rowStride;
+  private final int pixelStride;
+  private final int left;
+  private final int top;
+
+  /**
+   * @param buffer holds the plane
+   * @param offset index in {@code buffer} of the plane's first pixel
+   * @param dataWidth width of the plane
+   * @param dataHeight height of the plane
+   * @param rowStride distance between the first pixels of two rows, at least
+   *  {@code (dataWidth - 1) * pixelStride + 1}
+   * @param pixelStride distance between two pixels of a row, 1 for a packed plane
+   */
+  public ByteBufferLuminanceSource(ByteBuffer buffer, int offset, int dataWidth, int dataHeight,
+                                   int rowStride, int pixelStride) {
+    this(buffer, offset, dataWidth, dataHeight, rowStride, pixelStride,
+         0, 0, dataWidth, dataHeight);
+  }
+
+  /**
+   * Like {@link #ByteBufferLuminanceSource(ByteBuffer, int, int, int, int, int)}, cropped to
+   * the given rectangle of the plane.
+   */
+  public ByteBufferLuminanceSource(ByteBuffer buffer, int offset, int dataWidth, int dataHeight,
+                                   int rowStride, int pixelStride,
+                                   int left, int top, int width, int height) {
+    super(width, height);
+    if (left < 0 || top < 0 || width <= 0 || height <= 0
+        || left + width > dataWidth || top + height > dataHeight) {
+      throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+    }
+    if (offset < 0 || pixelStride < 1 || rowStride < (dataWidth - 1) * pixelStride + 1) {
+      throw new IllegalArgumentException("Bad offset or strides");
+    }
+    long last = offset + (long) (top + height - 1) * rowStride + (long) (left + width - 1) * pixelStride;
+    if (last >= buffer.limit()) {
+      throw new IllegalArgumentException("Image data does not fit within buffer.");
+    }
+    this.buffer = buffer.duplicate();
+    this.offset = offset;
+    this.rowStride = rowStride;
+    this.pixelStride = pixelStride;
+    this.left = left;
+    this.top = top;
+  }
+
+  private ByteBufferLuminanceSource(ByteBufferLuminanceSource parent,
+                                    int left, int top, int width, int height) {
+    super(width, height);
+    this.buffer = parent.buffer.duplicate();
+    this.offset = parent.offset;
+    this.rowStride = parent.rowStride;
+    this.pixelStride = parent.pixelStride;
+    this.left = left;
+    this.top = top;
+  }
+
+  @Override
+  public byte[] getRow(int y, byte[] row) {
+    if (y < 0 || y >= getHeight()) {
+      throw new IllegalArgumentException("Requested row is outside the image: " + y);
+    }
+    int width = getWidth();
+    if (row == null || row.length < width) {
+      row = new byte[width];
+    }
+    copyRow(y, row, 0);
+    return row;
+  }
+
+  @Override
+  public byte[] getMatrix() {
+    int width = getWidth();
+    int height = getHeight();
+    byte[] matrix = new byte[width * height];
+    for (int y = 0; y < height; y++) {
+      copyRow(y, matrix, y * width);
+    }
+    return matrix;
+  }
+
+  private void copyRow(int y, byte[] out, int outputOffset) {
+    int width = getWidth();
+    int inputOffset = offset + (y + top) * rowStride + left * pixelStride;
+    if (pixelStride == 1) {
+      if (buffer.hasArray()) {
+        System.arraycopy(buffer.array(), buffer.arrayOffset() + inputOffset, out, outputOffset, width);
+      } else {
+        // Java 7 has no absolute bulk get, so move the view's position instead
+        buffer.position(inputOffset);
+        buffer.get(out, outputOffset, width);
+      }
+      return;
+    }
+    for (int x = 0; x < width; x++, inputOffset += pixelStride) {
+      out[outputOffset + x] = buffer.get(inputOffset);
+    }
+  }
+
+  @Override
+  public boolean isCropSupported() {
+    return true;
+  }
+
+  @Override
+  public LuminanceSource crop(int left, int top, int width, int height) {
+    if (left < 0 || top < 0 || left + width > getWidth() || top + height > getHeight()) {
+      throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+    }
+    return new ByteBufferLuminanceSource(this, this.left + left, this.top + top, width, height);
+  }
+
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2015 excelsecu authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing;
+
+/**
+ * Thrown when decoding was abandoned through the {@link DecodeHintType#CANCELLATION} hint
+ * before a barcode could be found. It is a {@link NotFoundException}, so readers which don't know
+ * about it just report nothing found.
+ */
+public class DecodeCancelledException extends NotFoundException {
+
+  private static final DecodeCancelledException instance = new DecodeCancelledException();
+
+  DecodeCancelledException() {
+    // do nothing
+  }
+
+  public static DecodeCancelledException getDecodeCancelledInstance() {
+    return instance;
+  }
+
+}
@@ -16,6 +16,9 @@
 
 package com.google.zxing;
 
+import com.google.zxing.common.Cancellation;
+import com.google.zxing.common.LuminancePyramid;
+
 import java.util.List;
 
 /**
@@ -98,6 +101,37 @@ public enum DecodeHintType {
    */
   ALLOWED_EAN_EXTENSIONS(int[].class),
 
+  /**
+   * The caller wants to know how long each stage of decoding takes.
+   * Maps to a {@link DecodeMetrics}.
+   */
+  DECODE_METRICS(DecodeMetrics.class),
+
+  /**
+   * Lets the caller abandon decoding from another thread.
+   * Maps to a {@link com.google.zxing.common.Cancellation}.
+   */
+  CANCELLATION(Cancellation.class),
+
+  /**
+   * How long one call to decode may take at most, in ms, after which it gives up with a
+   * {@link DecodeTimeoutException}. Maps to an {@link Integer}.
+   */
+  TIME_BUDGET(Integer.class),
+
+  /**
+   * Downscaled copies of the image, for the QR detector to find finder patterns on.
+   * Maps to a {@link com.google.zxing.common.LuminancePyramid} built from the image's source.
+   */
+  LUMINANCE_PYRAMID(LuminancePyramid.class),
+
+  /**
+   * If nothing is found, tries again with black and white swapped, for light on dark codes.
+   * The image is binarized only once, see {@link BinaryBitmap#invert()}.
+   * Doesn't matter what it maps to; use {@link Boolean#TRUE}.
+   */
+  ALSO_INVERTED(Void.class),
+
   // End of enumeration values.
   ;
 
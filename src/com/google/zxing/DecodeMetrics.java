@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2015 excelsecu authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing;
+
+/**
+ * Receives how long each stage of a decode took, whether or not the decode succeeded. It may be
+ * called from several decoding threads at once.
+ *
+ * @see DecodeHintType#DECODE_METRICS
+ */
+public interface DecodeMetrics {
+
+  enum Stage {
+    /** Building (and rotating, if needed) the luminance source from a camera frame. */
+    LUMINANCE,
+    /** Building the downscaled levels of a luminance pyramid. */
+    PYRAMID,
+    /** Turning luminance into a black and white matrix. */
+    BINARIZE,
+    /** Searching the matrix for finder patterns. */
+    FINDER_PATTERNS,
+    /** Finding the alignment pattern and sampling the code's modules. */
+    SAMPLING,
+    /** Reading version, format and codewords out of the sampled modules. */
+    BIT_MATRIX_PARSER,
+    /** Reed-Solomon error correction of all data blocks. */
+    REED_SOLOMON,
+    /** Turning the corrected bytes into text. */
+    BIT_STREAM_PARSER,
+    /** A whole frame in which a barcode was found. */
+    FRAME_FOUND,
+    /** A whole frame in which no barcode was found. */
+    FRAME_NOT_FOUND,
+    /** A frame which was skipped before decoding, e.g. as too blurred. */
+    FRAME_SKIPPED,
+    /** A whole frame which was given up on as it ran over its time budget. */
+    FRAME_TIMED_OUT
+  }
+
+  /**
+   * @param stage the stage which finished, successfully or not
+   * @param nanos how long it took in ns
+   */
+  void recordStage(Stage stage, long nanos);
+
+}
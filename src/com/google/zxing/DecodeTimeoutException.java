@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2015 excelsecu authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing;
+
+/**
+ * Thrown when decoding was abandoned because it ran over the {@link DecodeHintType#TIME_BUDGET}.
+ * The image may well hold a barcode which more time would have found.
+ */
+public final class DecodeTimeoutException extends DecodeCancelledException {
+
+  private static final DecodeTimeoutException instance = new DecodeTimeoutException();
+
+  private DecodeTimeoutException() {
+    // do nothing
+  }
+
+  public static DecodeTimeoutException getDecodeTimeoutInstance() {
+    return instance;
+  }
+
+}
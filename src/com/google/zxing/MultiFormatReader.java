@@ -16,10 +16,12 @@
 
 package com.google.zxing;
 
+import com.google.zxing.common.Cancellation;
 import com.google.zxing.qrcode.QRCodeReader;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumMap;
 import java.util.Map;
 
 /**
@@ -33,6 +35,12 @@ import java.util.Map;
 public final class MultiFormatReader implements Reader {
 
   private Map<DecodeHintType,?> hints;
+  // With ALSO_INVERTED: the hints for the normal pass, for the inverted pass, and the deadline
+  // both passes share when there is a TIME_BUDGET, all set up once in setHints()
+  private Map<DecodeHintType,?> normalHints;
+  private Map<DecodeHintType,?> invertedHints;
+  private Cancellation budgetCancellation;
+  private int budgetMs;
   private Reader[] readers;
 
   /**
@@ -89,6 +97,7 @@ public final class MultiFormatReader implements Reader {
    */
   public void setHints(Map<DecodeHintType,?> hints) {
     this.hints = hints;
+    setUpInverted(hints);
 
     //@ch we only need QR_CODE
 //    boolean tryHarder = hints != null && hints.containsKey(DecodeHintType.TRY_HARDER);
@@ -162,17 +171,64 @@ public final class MultiFormatReader implements Reader {
     }
   }
 
+  private void setUpInverted(Map<DecodeHintType,?> hints) {
+    normalHints = hints;
+    invertedHints = null;
+    budgetCancellation = null;
+    if (hints == null || !hints.containsKey(DecodeHintType.ALSO_INVERTED)) {
+      return;
+    }
+    Integer budget = (Integer) hints.get(DecodeHintType.TIME_BUDGET);
+    if (budget != null) {
+      // One deadline for both polarities, instead of each reader call starting its own
+      budgetMs = budget;
+      budgetCancellation = Cancellation.withBudget(Cancellation.get(hints), budgetMs);
+      Map<DecodeHintType,Object> budgetHints = new EnumMap<>(DecodeHintType.class);
+      budgetHints.putAll(hints);
+      budgetHints.remove(DecodeHintType.TIME_BUDGET);
+      budgetHints.put(DecodeHintType.CANCELLATION, budgetCancellation);
+      normalHints = budgetHints;
+    }
+    invertedHints = normalHints;
+    if (normalHints.containsKey(DecodeHintType.LUMINANCE_PYRAMID)) {
+      // The pyramid levels are dark on light, so finder patterns are searched on the full matrix
+      Map<DecodeHintType,Object> noPyramidHints = new EnumMap<>(DecodeHintType.class);
+      noPyramidHints.putAll(normalHints);
+      noPyramidHints.remove(DecodeHintType.LUMINANCE_PYRAMID);
+      invertedHints = noPyramidHints;
+    }
+  }
+
   private Result decodeInternal(BinaryBitmap image) throws NotFoundException {
     if (readers != null) {
-      for (Reader reader : readers) {
-        try {
-          return reader.decode(image, hints);
-        } catch (ReaderException re) {
-          // continue
-        }
+      if (budgetCancellation != null) {
+        budgetCancellation.startBudget(budgetMs);
+      }
+      Result result = decodeWithReaders(image, normalHints);
+      if (result == null && invertedHints != null) {
+        // Same thresholds, black and white swapped
+        result = decodeWithReaders(image.invert(), invertedHints);
+      }
+      if (result != null) {
+        return result;
       }
     }
     throw NotFoundException.getNotFoundInstance();
   }
 
+  private Result decodeWithReaders(BinaryBitmap image, Map<DecodeHintType,?> hints)
+      throws DecodeCancelledException {
+    for (Reader reader : readers) {
+      try {
+        return reader.decode(image, hints);
+      } catch (DecodeCancelledException dce) {
+        // No point trying the others
+        throw dce;
+      } catch (ReaderException re) {
+        // continue
+      }
+    }
+    return null;
+  }
+
 }
@@ -22,11 +22,11 @@ package com.google.zxing;
  *
  * @author Sean Owen
  */
-public final class NotFoundException extends ReaderException {
+public class NotFoundException extends ReaderException {
 
   private static final NotFoundException instance = new NotFoundException();
 
-  private NotFoundException() {
+  NotFoundException() {
     // do nothing
   }
 
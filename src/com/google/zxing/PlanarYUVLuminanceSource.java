@@ -24,6 +24,10 @@ package com.google.zxing;
  * It works for any pixel format where the Y channel is planar and appears first, including
  * YCbCr_420_SP and YCbCr_422_SP.
  *
+ * Cropping, rotating and mirroring only remap coordinates over the original data, which is never
+ * written to; pixels are copied once, in the orientation asked for, when rows or the matrix are
+ * read.
+ *
  * @author dswitkin@google.com (Daniel Switkin)
  */
 public final class PlanarYUVLuminanceSource extends LuminanceSource {
@@ -33,8 +37,11 @@ public final class PlanarYUVLuminanceSource extends LuminanceSource {
   private final byte[] yuvData;
   private final int dataWidth;
   private final int dataHeight;
-  private final int left;
-  private final int top;
+  //@ch pixel (x, y) of this view is yuvData[origin + x * xStep + y * yStep], each step being
+  //1 or dataWidth either way
+  private final int origin;
+  private final int xStep;
+  private final int yStep;
 
   public PlanarYUVLuminanceSource(byte[] yuvData,
                                   int dataWidth,
@@ -53,11 +60,33 @@ public final class PlanarYUVLuminanceSource extends LuminanceSource {
     this.yuvData = yuvData;
     this.dataWidth = dataWidth;
     this.dataHeight = dataHeight;
-    this.left = left;
-    this.top = top;
+    int topLeft = top * dataWidth + left;
     if (reverseHorizontal) {
-      reverseHorizontal(width, height);
+      // Mirrored: each row is read from right to left
+      origin = topLeft + width - 1;
+      xStep = -1;
+    } else {
+      origin = topLeft;
+      xStep = 1;
     }
+    yStep = dataWidth;
+  }
+
+  private PlanarYUVLuminanceSource(byte[] yuvData,
+                                   int dataWidth,
+                                   int dataHeight,
+                                   int origin,
+                                   int xStep,
+                                   int yStep,
+                                   int width,
+                                   int height) {
+    super(width, height);
+    this.yuvData = yuvData;
+    this.dataWidth = dataWidth;
+    this.dataHeight = dataHeight;
+    this.origin = origin;
+    this.xStep = xStep;
+    this.yStep = yStep;
   }
 
   @Override
@@ -69,8 +98,12 @@ public final class PlanarYUVLuminanceSource extends LuminanceSource {
     if (row == null || row.length < width) {
       row = new byte[width];
     }
-    int offset = (y + top) * dataWidth + left;
-    System.arraycopy(yuvData, offset, row, 0, width);
+    int offset = origin + y * yStep;
+    if (xStep == 1) {
+      System.arraycopy(yuvData, offset, row, 0, width);
+    } else {
+      copyRow(offset, row, 0, width);
+    }
     return row;
   }
 
@@ -81,16 +114,16 @@ public final class PlanarYUVLuminanceSource extends LuminanceSource {
 
     // If the caller asks for the entire underlying image, save the copy and give them the
     // original data. The docs specifically warn that result.length must be ignored.
-    if (width == dataWidth && height == dataHeight) {
+    if (width == dataWidth && height == dataHeight && xStep == 1 && yStep == dataWidth) {
       return yuvData;
     }
 
     int area = width * height;
     byte[] matrix = new byte[area];
-    int inputOffset = top * dataWidth + left;
+    int inputOffset = origin;
 
     // If the width matches the full width of the underlying data, perform a single copy.
-    if (width == dataWidth) {
+    if (width == dataWidth && xStep == 1 && yStep == dataWidth) {
       System.arraycopy(yuvData, inputOffset, matrix, 0, area);
       return matrix;
     }
@@ -99,12 +132,24 @@ public final class PlanarYUVLuminanceSource extends LuminanceSource {
     byte[] yuv = yuvData;
     for (int y = 0; y < height; y++) {
       int outputOffset = y * width;
-      System.arraycopy(yuv, inputOffset, matrix, outputOffset, width);
-      inputOffset += dataWidth;
+      if (xStep == 1) {
+        System.arraycopy(yuv, inputOffset, matrix, outputOffset, width);
+      } else {
+        copyRow(inputOffset, matrix, outputOffset, width);
+      }
+      inputOffset += yStep;
     }
     return matrix;
   }
 
+  private void copyRow(int inputOffset, byte[] out, int outputOffset, int width) {
+    byte[] yuv = yuvData;
+    int step = xStep;
+    for (int x = 0; x < width; x++, inputOffset += step) {
+      out[outputOffset + x] = yuv[inputOffset];
+    }
+  }
+
   @Override
   public boolean isCropSupported() {
     return true;
@@ -112,14 +157,67 @@ public final class PlanarYUVLuminanceSource extends LuminanceSource {
 
   @Override
   public LuminanceSource crop(int left, int top, int width, int height) {
+    if (left < 0 || top < 0 || left + width > getWidth() || top + height > getHeight()) {
+      throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+    }
     return new PlanarYUVLuminanceSource(yuvData,
                                         dataWidth,
                                         dataHeight,
-                                        this.left + left,
-                                        this.top + top,
+                                        origin + left * xStep + top * yStep,
+                                        xStep,
+                                        yStep,
                                         width,
-                                        height,
-                                        false);
+                                        height);
+  }
+
+  @Override
+  public boolean isRotateSupported() {
+    return true;
+  }
+
+  /**
+   * @return a view of the same data turned 90 degrees counterclockwise; nothing is copied
+   */
+  @Override
+  public PlanarYUVLuminanceSource rotateCounterClockwise() {
+    // New (x, y) is old (width - 1 - y, x)
+    return new PlanarYUVLuminanceSource(yuvData,
+                                        dataWidth,
+                                        dataHeight,
+                                        origin + (getWidth() - 1) * xStep,
+                                        yStep,
+                                        -xStep,
+                                        getHeight(),
+                                        getWidth());
+  }
+
+  /**
+   * @return a view of the same data turned 90 degrees clockwise; nothing is copied
+   */
+  public PlanarYUVLuminanceSource rotateClockwise() {
+    // New (x, y) is old (y, height - 1 - x)
+    return new PlanarYUVLuminanceSource(yuvData,
+                                        dataWidth,
+                                        dataHeight,
+                                        origin + (getHeight() - 1) * yStep,
+                                        -yStep,
+                                        xStep,
+                                        getHeight(),
+                                        getWidth());
+  }
+
+  /**
+   * @return a view of the same data mirrored left to right; nothing is copied
+   */
+  public PlanarYUVLuminanceSource mirror() {
+    return new PlanarYUVLuminanceSource(yuvData,
+                                        dataWidth,
+                                        dataHeight,
+                                        origin + (getWidth() - 1) * xStep,
+                                        -xStep,
+                                        yStep,
+                                        getWidth(),
+                                        getHeight());
   }
 
   public int[] renderThumbnail() {
@@ -127,15 +225,16 @@ public final class PlanarYUVLuminanceSource extends LuminanceSource {
     int height = getHeight() / THUMBNAIL_SCALE_FACTOR;
     int[] pixels = new int[width * height];
     byte[] yuv = yuvData;
-    int inputOffset = top * dataWidth + left;
+    int inputOffset = origin;
+    int xStride = xStep * THUMBNAIL_SCALE_FACTOR;
 
     for (int y = 0; y < height; y++) {
       int outputOffset = y * width;
       for (int x = 0; x < width; x++) {
-        int grey = yuv[inputOffset + x * THUMBNAIL_SCALE_FACTOR] & 0xff;
+        int grey = yuv[inputOffset + x * xStride] & 0xff;
         pixels[outputOffset + x] = 0xFF000000 | (grey * 0x00010101);
       }
-      inputOffset += dataWidth * THUMBNAIL_SCALE_FACTOR;
+      inputOffset += yStep * THUMBNAIL_SCALE_FACTOR;
     }
     return pixels;
   }
@@ -154,16 +253,4 @@ public final class PlanarYUVLuminanceSource extends LuminanceSource {
     return getHeight() / THUMBNAIL_SCALE_FACTOR;
   }
 
-  private void reverseHorizontal(int width, int height) {
-    byte[] yuvData = this.yuvData;
-    for (int y = 0, rowStart = top * dataWidth + left; y < height; y++, rowStart += dataWidth) {
-      int middle = rowStart + width / 2;
-      for (int x1 = rowStart, x2 = rowStart + width - 1; x1 < middle; x1++, x2--) {
-        byte temp = yuvData[x1];
-        yuvData[x1] = yuvData[x2];
-        yuvData[x2] = temp;
-      }
-    }
-  }
-
 }
@@ -16,51 +16,95 @@
 
 package com.google.zxing;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
 /**
- * This class is used to help decode images from files which arrive as RGB data from
- * an ARGB pixel array. It does not support rotation.
+ * This class is used to help decode images from files which arrive as RGB data, either as an ARGB
+ * pixel array or as interleaved bytes. It does not support rotation.
+ *
+ * Nothing is converted up front: only the rows or the crop asked for are turned into luminance,
+ * with integer weights, straight from the caller's pixels, which must not change while decoding.
+ * Large matrices are converted in bands on all cores. On a server JVM the arrays behind a
+ * {@code BufferedImage}'s {@code DataBufferInt} or {@code DataBufferByte} can be passed as they
+ * are, e.g. {@link ByteLayout#BGR} for {@code TYPE_3BYTE_BGR}.
  *
  * @author dswitkin@google.com (Daniel Switkin)
  * @author Betaminos
  */
 public final class RGBLuminanceSource extends LuminanceSource {
 
-  private final byte[] luminances;
+  /**
+   * Order of the channels of one pixel in a byte array.
+   */
+  public enum ByteLayout {
+    RGB(3, 0, 1, 2),
+    BGR(3, 2, 1, 0),
+    RGBA(4, 0, 1, 2),
+    BGRA(4, 2, 1, 0),
+    ARGB(4, 1, 2, 3),
+    ABGR(4, 3, 2, 1);
+
+    private final int pixelStride;
+    private final int redOffset;
+    private final int greenOffset;
+    private final int blueOffset;
+
+    ByteLayout(int pixelStride, int redOffset, int greenOffset, int blueOffset) {
+      this.pixelStride = pixelStride;
+      this.redOffset = redOffset;
+      this.greenOffset = greenOffset;
+      this.blueOffset = blueOffset;
+    }
+
+    public int getPixelStride() {
+      return pixelStride;
+    }
+  }
+
+  //@ch ITU-R BT.601 luma, 0.299 R + 0.587 G + 0.114 B, in 1/256ths
+  private static final int RED_WEIGHT = 77;
+  private static final int GREEN_WEIGHT = 150;
+  private static final int BLUE_WEIGHT = 29;
+  //@ch below this, starting the other threads costs more than it saves
+  private static final int PARALLEL_MIN_PIXELS = 1 << 21;
+  private static final int CORES = Runtime.getRuntime().availableProcessors();
+  private static ExecutorService executor;
+
+  private final int[] argb;
+  private final byte[] bytes;
+  private final ByteLayout layout;
   private final int dataWidth;
   private final int dataHeight;
   private final int left;
   private final int top;
 
   public RGBLuminanceSource(int width, int height, int[] pixels) {
-    super(width, height);
-
-    dataWidth = width;
-    dataHeight = height;
-    left = 0;
-    top = 0;
+    this(pixels, null, null, width, height, 0, 0, width, height);
+    if (pixels.length < width * height) {
+      throw new IllegalArgumentException("Pixels do not fit " + width + "x" + height);
+    }
+  }
 
-    // In order to measure pure decoding speed, we convert the entire image to a greyscale array
-    // up front, which is the same as the Y channel of the YUVLuminanceSource in the real app.
-    luminances = new byte[width * height];
-    for (int y = 0; y < height; y++) {
-      int offset = y * width;
-      for (int x = 0; x < width; x++) {
-        int pixel = pixels[offset + x];
-        int r = (pixel >> 16) & 0xff;
-        int g = (pixel >> 8) & 0xff;
-        int b = pixel & 0xff;
-        if (r == g && g == b) {
-          // Image is already greyscale, so pick any channel.
-          luminances[offset + x] = (byte) r;
-        } else {
-          // Calculate luminance cheaply, favoring green.
-          luminances[offset + x] = (byte) ((r + 2 * g + b) / 4);
-        }
-      }
+  /**
+   * @param pixels interleaved channels, {@code layout.getPixelStride()} bytes a pixel, rows packed
+   * @param layout order of the channels
+   */
+  public RGBLuminanceSource(int width, int height, byte[] pixels, ByteLayout layout) {
+    this(null, pixels, layout, width, height, 0, 0, width, height);
+    if (pixels.length < width * height * layout.pixelStride) {
+      throw new IllegalArgumentException("Pixels do not fit " + width + "x" + height);
     }
   }
-  
-  private RGBLuminanceSource(byte[] pixels,
+
+  private RGBLuminanceSource(int[] argb,
+                             byte[] bytes,
+                             ByteLayout layout,
                              int dataWidth,
                              int dataHeight,
                              int left,
@@ -71,7 +115,9 @@ public final class RGBLuminanceSource extends LuminanceSource {
     if (left + width > dataWidth || top + height > dataHeight) {
       throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
     }
-    this.luminances = pixels;
+    this.argb = argb;
+    this.bytes = bytes;
+    this.layout = layout;
     this.dataWidth = dataWidth;
     this.dataHeight = dataHeight;
     this.left = left;
@@ -87,40 +133,100 @@ public final class RGBLuminanceSource extends LuminanceSource {
     if (row == null || row.length < width) {
       row = new byte[width];
     }
-    int offset = (y + top) * dataWidth + left;
-    System.arraycopy(luminances, offset, row, 0, width);
+    convertRow(y, row, 0);
     return row;
   }
 
   @Override
   public byte[] getMatrix() {
-    int width = getWidth();
+    final int width = getWidth();
     int height = getHeight();
-
-    // If the caller asks for the entire underlying image, save the copy and give them the
-    // original data. The docs specifically warn that result.length must be ignored.
-    if (width == dataWidth && height == dataHeight) {
-      return luminances;
+    final byte[] matrix = new byte[width * height];
+    int bands = width * height < PARALLEL_MIN_PIXELS ? 1 : Math.min(CORES, height);
+    if (bands <= 1) {
+      convertRows(0, height, matrix);
+      return matrix;
+    }
+    ExecutorService theExecutor = getExecutor();
+    List<Future<?>> futures = new ArrayList<>(bands - 1);
+    for (int band = 1; band < bands; band++) {
+      final int start = height * band / bands;
+      final int end = height * (band + 1) / bands;
+      futures.add(theExecutor.submit(new Runnable() {
+        @Override
+        public void run() {
+          convertRows(start, end, matrix);
+        }
+      }));
+    }
+    // This thread takes the first band itself
+    convertRows(0, height / bands, matrix);
+    boolean interrupted = false;
+    for (Future<?> future : futures) {
+      while (true) {
+        try {
+          future.get();
+          break;
+        } catch (InterruptedException ie) {
+          // The matrix isn't complete yet; wait on, and pass the interrupt on afterwards
+          interrupted = true;
+        } catch (ExecutionException ee) {
+          throw new IllegalStateException(ee.getCause());
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
     }
+    return matrix;
+  }
 
-    int area = width * height;
-    byte[] matrix = new byte[area];
-    int inputOffset = top * dataWidth + left;
+  private void convertRows(int start, int end, byte[] matrix) {
+    int width = getWidth();
+    for (int y = start; y < end; y++) {
+      convertRow(y, matrix, y * width);
+    }
+  }
 
-    // If the width matches the full width of the underlying data, perform a single copy.
-    if (width == dataWidth) {
-      System.arraycopy(luminances, inputOffset, matrix, 0, area);
-      return matrix;
+  private void convertRow(int y, byte[] out, int outputOffset) {
+    int width = getWidth();
+    if (argb != null) {
+      int[] pixels = argb;
+      int inputOffset = (y + top) * dataWidth + left;
+      for (int x = 0; x < width; x++) {
+        int pixel = pixels[inputOffset + x];
+        out[outputOffset + x] = (byte) ((RED_WEIGHT * ((pixel >> 16) & 0xff)
+            + GREEN_WEIGHT * ((pixel >> 8) & 0xff)
+            + BLUE_WEIGHT * (pixel & 0xff) + 128) >> 8);
+      }
+      return;
+    }
+    byte[] pixels = bytes;
+    int stride = layout.pixelStride;
+    int inputOffset = ((y + top) * dataWidth + left) * stride;
+    int red = inputOffset + layout.redOffset;
+    int green = inputOffset + layout.greenOffset;
+    int blue = inputOffset + layout.blueOffset;
+    for (int x = 0; x < width; x++, red += stride, green += stride, blue += stride) {
+      out[outputOffset + x] = (byte) ((RED_WEIGHT * (pixels[red] & 0xff)
+          + GREEN_WEIGHT * (pixels[green] & 0xff)
+          + BLUE_WEIGHT * (pixels[blue] & 0xff) + 128) >> 8);
     }
+  }
 
-    // Otherwise copy one cropped row at a time.
-    byte[] rgb = luminances;
-    for (int y = 0; y < height; y++) {
-      int outputOffset = y * width;
-      System.arraycopy(rgb, inputOffset, matrix, outputOffset, width);
-      inputOffset += dataWidth;
+  private static synchronized ExecutorService getExecutor() {
+    if (executor == null) {
+      executor = Executors.newFixedThreadPool(CORES - 1, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "RGBLuminanceSource");
+          // Never keeps the VM alive
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
     }
-    return matrix;
+    return executor;
   }
   
   @Override
@@ -130,7 +236,9 @@ public final class RGBLuminanceSource extends LuminanceSource {
 
   @Override
   public LuminanceSource crop(int left, int top, int width, int height) {
-    return new RGBLuminanceSource(luminances,
+    return new RGBLuminanceSource(argb,
+                                  bytes,
+                                  layout,
                                   dataWidth,
                                   dataHeight,
                                   this.left + left,
@@ -19,7 +19,6 @@ package com.google.zxing.client.android;
 import android.content.ActivityNotFoundException;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
-import android.graphics.BitmapFactory;
 import android.provider.Browser;
 
 import com.excelsecu.zxing.util.LogUtil;
@@ -87,11 +86,13 @@ public final class CaptureActivityHandler extends Handler {
         Bundle bundle = message.getData();
         Bitmap barcode = null;
         if (bundle != null) {
-          byte[] compressedBitmap = bundle.getByteArray(DecodeThread.BARCODE_BITMAP);
-          if (compressedBitmap != null) {
-            barcode = BitmapFactory.decodeByteArray(compressedBitmap, 0, compressedBitmap.length, null);
-            // Mutable copy:
-            barcode = barcode.copy(Bitmap.Config.ARGB_8888, true);
+          int[] pixels = bundle.getIntArray(DecodeThread.BARCODE_BITMAP);
+          if (pixels != null) {
+            int width = bundle.getInt(DecodeThread.BARCODE_BITMAP_WIDTH);
+            int height = bundle.getInt(DecodeThread.BARCODE_BITMAP_HEIGHT);
+            // Mutable, so result points can be drawn on it
+            barcode = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            barcode.setPixels(pixels, 0, width, 0, 0, width, height);
           }       
         }
         activity.handleDecode((Result) message.obj, barcode);
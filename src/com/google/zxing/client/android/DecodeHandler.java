@@ -16,8 +16,6 @@
 
 package com.google.zxing.client.android;
 
-import android.graphics.Bitmap;
-
 import com.excelsecu.zxing.util.LogUtil;
 import com.google.zxing.BinaryBitmap;
 import com.google.zxing.DecodeHintType;
@@ -25,6 +23,8 @@ import com.google.zxing.MultiFormatReader;
 import com.google.zxing.PlanarYUVLuminanceSource;
 import com.google.zxing.ReaderException;
 import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.client.android.camera.CameraManager;
 import com.google.zxing.common.GlobalHistogramBinarizer;
 
 import android.os.Bundle;
@@ -32,7 +32,6 @@ import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
 
-import java.io.ByteArrayOutputStream;
 import java.util.Map;
 
 final class DecodeHandler extends Handler {
@@ -56,7 +55,13 @@ final class DecodeHandler extends Handler {
     }
     switch (message.what) {
       case Res.id.decode:
-        decode((byte[]) message.obj, message.arg1, message.arg2);
+        byte[] data = (byte[]) message.obj;
+        try {
+          decode(data, message.arg1, message.arg2);
+        } finally {
+          // The frame goes back to the camera's buffer ring, don't touch it after this
+          activity.getCameraManager().releasePreviewFrame(data);
+        }
         break;
       case Res.id.quit:
         running = false;
@@ -92,13 +97,14 @@ final class DecodeHandler extends Handler {
 
     Handler handler = activity.getHandler();
     if (rawResult != null) {
+      toFramingRectInPreview(rawResult);
       // Don't log the barcode contents for security.
       long end = System.currentTimeMillis();
       LogUtil.d(TAG, "Found barcode in " + (end - start) + " ms");
       if (handler != null) {
         Message message = Message.obtain(handler, Res.id.decode_succeeded, rawResult);
         Bundle bundle = new Bundle();
-        bundleThumbnail(source, bundle);        
+        bundleThumbnail(source, activity.getCameraManager().isDecodeInSensorOrientation(), bundle);
         message.setData(bundle);
         message.sendToTarget();
       }
@@ -110,14 +116,30 @@ final class DecodeHandler extends Handler {
     }
   }
 
-  private static void bundleThumbnail(PlanarYUVLuminanceSource source, Bundle bundle) {
-    int[] pixels = source.renderThumbnail();
+  private void toFramingRectInPreview(Result result) {
+    ResultPoint[] points = result.getResultPoints();
+    if (points != null) {
+      CameraManager cameraManager = activity.getCameraManager();
+      for (int i = 0; i < points.length; i++) {
+        points[i] = cameraManager.toFramingRectInPreview(points[i]);
+      }
+    }
+  }
+
+  private static void bundleThumbnail(PlanarYUVLuminanceSource source, boolean sensorOrientation,
+                                      Bundle bundle) {
+    // Raw pixels go straight to the handler, which builds the Bitmap once; no JPEG round trip
+    int[] pixels = CameraManager.renderThumbnailInPreview(source, sensorOrientation);
     int width = source.getThumbnailWidth();
     int height = source.getThumbnailHeight();
-    Bitmap bitmap = Bitmap.createBitmap(pixels, 0, width, width, height, Bitmap.Config.ARGB_8888);
-    ByteArrayOutputStream out = new ByteArrayOutputStream();    
-    bitmap.compress(Bitmap.CompressFormat.JPEG, 50, out);
-    bundle.putByteArray(DecodeThread.BARCODE_BITMAP, out.toByteArray());
     bundle.putFloat(DecodeThread.BARCODE_SCALED_FACTOR, (float) width / source.getWidth());
+    if (sensorOrientation) {
+      int temp = width;
+      width = height;
+      height = temp;
+    }
+    bundle.putIntArray(DecodeThread.BARCODE_BITMAP, pixels);
+    bundle.putInt(DecodeThread.BARCODE_BITMAP_WIDTH, width);
+    bundle.putInt(DecodeThread.BARCODE_BITMAP_HEIGHT, height);
   }
 }
@@ -40,6 +40,8 @@ import java.util.concurrent.CountDownLatch;
 final class DecodeThread extends Thread {
 
   public static final String BARCODE_BITMAP = "barcode_bitmap";
+  public static final String BARCODE_BITMAP_WIDTH = "barcode_bitmap_width";
+  public static final String BARCODE_BITMAP_HEIGHT = "barcode_bitmap_height";
   public static final String BARCODE_SCALED_FACTOR = "barcode_scaled_factor";
 
   private final CaptureActivity activity;
@@ -9,5 +9,6 @@ public class Res {
         public final static int quit = 5;
         public final static int restart_preview = 6;
         public final static int return_scan_result = 7;
+        public final static int preview_frame = 8;
     }
 }
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2015 excelsecu authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Carries possible result points from the decode threads to the viewfinder without locks or
+ * allocation. Points are kept as plain floats in a fixed ring; when the UI falls behind the
+ * oldest ones are overwritten, and points close to one already drawn are merged into it.
+ *
+ * Any number of threads may {@link #offer}, one thread may {@link #drain}. A point overwritten
+ * while it is being drained may come out with one coordinate from each; that's harmless for
+ * a dot on screen.
+ */
+final class ResultPointRing {
+
+  // Points within this many pixels of one another are drawn as one
+  private static final float COALESCE_DISTANCE = 2.0f;
+
+  private final int capacity;
+  private final int mask;
+  private final float[] xs;
+  private final float[] ys;
+  // Sequence number + 1 of the point in each slot, set once the point is written
+  private final AtomicIntegerArray published;
+  private final AtomicInteger writeSequence = new AtomicInteger();
+  private int readSequence;
+
+  /**
+   * @param capacity how many points are kept at most, rounded up to a power of 2
+   */
+  ResultPointRing(int capacity) {
+    int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+    this.capacity = size;
+    mask = size - 1;
+    xs = new float[size];
+    ys = new float[size];
+    published = new AtomicIntegerArray(size);
+  }
+
+  int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Adds a point. Never blocks.
+   */
+  void offer(float x, float y) {
+    int sequence = writeSequence.getAndIncrement();
+    int slot = sequence & mask;
+    xs[slot] = x;
+    ys[slot] = y;
+    published.set(slot, sequence + 1);
+  }
+
+  /**
+   * Takes the points added since the last drain, oldest first.
+   *
+   * @param points receives x, y pairs; at least {@code 2 * getCapacity()} long
+   * @return number of points taken
+   */
+  int drain(float[] points) {
+    int end = writeSequence.get();
+    int sequence = readSequence;
+    if (end - sequence > capacity) {
+      // Fell behind, the oldest ones are gone
+      sequence = end - capacity;
+    }
+    int count = 0;
+    for (; sequence != end; sequence++) {
+      int slot = sequence & mask;
+      int expected = sequence + 1;
+      int found = published.get(slot);
+      if (found != expected) {
+        if (found - expected > 0) {
+          // Already overwritten by a newer point
+          continue;
+        }
+        // Claimed but not written yet, pick it up next time
+        break;
+      }
+      float x = xs[slot];
+      float y = ys[slot];
+      if (published.get(slot) != expected || isDuplicate(points, count, x, y)) {
+        continue;
+      }
+      points[2 * count] = x;
+      points[2 * count + 1] = y;
+      count++;
+    }
+    readSequence = sequence;
+    return count;
+  }
+
+  private static boolean isDuplicate(float[] points, int count, float x, float y) {
+    for (int i = 0; i < count; i++) {
+      if (Math.abs(points[2 * i] - x) <= COALESCE_DISTANCE
+          && Math.abs(points[2 * i + 1] - y) <= COALESCE_DISTANCE) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+}
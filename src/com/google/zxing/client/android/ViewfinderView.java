@@ -19,7 +19,6 @@ package com.google.zxing.client.android;
 import com.google.zxing.ResultPoint;
 import com.google.zxing.client.android.camera.CameraManager;
 
-import android.annotation.SuppressLint;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
@@ -31,8 +30,6 @@ import android.util.AttributeSet;
 import android.view.View;
 
 import java.lang.reflect.Field;
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * This view is overlaid on top of the camera preview. It adds the viewfinder rectangle and partial
@@ -50,14 +47,25 @@ public final class ViewfinderView extends View {
 
   private CameraManager cameraManager;
   private final Paint paint;
+  private final Paint textPaint;
   private Bitmap resultBitmap;
   private final int maskColor;
   private final int resultColor;
   private final int laserColor;
   private final int resultPointColor;
   private int scannerAlpha;
-  private List<ResultPoint> possibleResultPoints;
-  private List<ResultPoint> lastPossibleResultPoints;
+  // Points come in on the decode threads, and are drawn from these x, y pairs
+  private final ResultPointRing possibleResultPoints;
+  private float[] currentPossibleResultPoints;
+  private int currentPossibleCount;
+  private float[] lastPossibleResultPoints;
+  private int lastPossibleCount;
+  //@ch geometry and the static layer, worked out once per layout instead of on every frame
+  private boolean geometryValid;
+  private final Rect frame = new Rect();
+  private final Rect previewFrame = new Rect();
+  private boolean decodeInSensorOrientation;
+  private Bitmap maskLayer;
 
   // This constructor is used when the class is built from an XML resource.
   public ViewfinderView(Context context, AttributeSet attrs) {
@@ -65,64 +73,89 @@ public final class ViewfinderView extends View {
 
     // Initialize these once for performance rather than calling them every time in onDraw().
     paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
     maskColor = 0x60000000;
     resultColor = 0xB0000000;
     laserColor = 0xFFCC0000;
     resultPointColor = 0xC0FFBD21;
     scannerAlpha = 0;
-    possibleResultPoints = new ArrayList<>(5);
-    lastPossibleResultPoints = null;
+    possibleResultPoints = new ResultPointRing(MAX_RESULT_POINTS);
+    currentPossibleResultPoints = new float[2 * possibleResultPoints.getCapacity()];
+    lastPossibleResultPoints = new float[2 * possibleResultPoints.getCapacity()];
   }
 
   public void setCameraManager(CameraManager cameraManager) {
     this.cameraManager = cameraManager;
+    geometryValid = false;
   }
 
-  @SuppressLint("DrawAllocation")
   @Override
-  public void onDraw(Canvas canvas) {
-    if (cameraManager == null) {
-      return; // not ready yet, early draw before done configuring
+  protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+    super.onSizeChanged(w, h, oldw, oldh);
+    geometryValid = false;
+  }
+
+  /**
+   * Picks up the framing rects and renders the static layer, when the layout or the camera
+   * changed.
+   *
+   * @return {@code false} if the camera isn't ready yet
+   */
+  private boolean updateGeometry() {
+    if (geometryValid) {
+      return true;
     }
     Rect frame = cameraManager.getFramingRect();
     Rect previewFrame = cameraManager.getFramingRectInPreview();
-    if (frame == null || previewFrame == null) {
-      return;
-    }
     int width = getWidth();
     int height = getHeight();
+    if (frame == null || previewFrame == null || width <= 0 || height <= 0) {
+      return false;
+    }
     //@ch decrease status bar height
     //why we should / 2? Because the preview was scaled instead of offset
     //it's not a perfect solution, we should use canvas resolution to calculate cameraManager.getFramingRect()
     //but we haven't fix this, maybe later
-    frame.top -= getStatusBarHeight() / 2;
-    frame.bottom -= getStatusBarHeight() / 2;
+    int statusBarOffset = getStatusBarHeight() / 2;
+    frame.top -= statusBarOffset;
+    frame.bottom -= statusBarOffset;
+    this.frame.set(frame);
+    this.previewFrame.set(previewFrame);
+    decodeInSensorOrientation = cameraManager.isDecodeInSensorOrientation();
 
-    // Draw the exterior (i.e. outside the framing rect) darkened
-    paint.setColor(resultBitmap != null ? resultColor : maskColor);
-    canvas.drawRect(0, 0, width, frame.top, paint);
-    canvas.drawRect(0, frame.top, frame.left, frame.bottom + 1, paint);
-    canvas.drawRect(frame.right + 1, frame.top, width, frame.bottom + 1, paint);
-    canvas.drawRect(0, frame.bottom + 1, width, height, paint);
-    //@ch draw the rim
-    int rimColor = 0xAA00AA00;
-    int rimWidth = frame.width() / 20;
-    int rimLength = frame.width() / 6;
-    paint.setColor(rimColor);
-    canvas.drawRect(frame.left - rimWidth, frame.top - rimWidth, frame.left + rimLength, frame.top, paint);
-    canvas.drawRect(frame.left - rimWidth, frame.top, frame.left, frame.top + rimLength, paint);
-    canvas.drawRect(frame.right - rimLength, frame.top - rimWidth, frame.right + rimWidth, frame.top, paint);
-    canvas.drawRect(frame.right, frame.top, frame.right + rimWidth, frame.top + rimLength, paint);
-    canvas.drawRect(frame.left - rimWidth, frame.bottom, frame.left + rimLength, frame.bottom + rimWidth, paint);
-    canvas.drawRect(frame.left - rimWidth, frame.bottom - rimLength, frame.left, frame.bottom, paint);
-    canvas.drawRect(frame.right - rimLength, frame.bottom, frame.right + rimWidth, frame.bottom + rimWidth, paint);
-    canvas.drawRect(frame.right,  frame.bottom - rimLength, frame.right + rimWidth, frame.bottom + rimWidth, paint);
+    if (maskLayer == null || maskLayer.getWidth() != width || maskLayer.getHeight() != height) {
+      if (maskLayer != null) {
+        maskLayer.recycle();
+      }
+      maskLayer = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    } else {
+      maskLayer.eraseColor(Color.TRANSPARENT);
+    }
+    Canvas layer = new Canvas(maskLayer);
+    drawMask(layer, width, height, maskColor);
+    drawBanner(layer, width);
+    geometryValid = true;
+    return true;
+  }
+
+  @Override
+  public void onDraw(Canvas canvas) {
+    if (cameraManager == null) {
+      return; // not ready yet, early draw before done configuring
+    }
+    if (!updateGeometry()) {
+      return;
+    }
+    Rect frame = this.frame;
 
     if (resultBitmap != null) {
-      // Draw the opaque result bitmap over the scanning rectangle
+      // Draw the exterior darker, then the opaque result bitmap over the scanning rectangle
+      drawMask(canvas, getWidth(), getHeight(), resultColor);
       paint.setAlpha(CURRENT_POINT_OPACITY);
       canvas.drawBitmap(resultBitmap, null, frame, paint);
     } else {
+      // Exterior darkened, the rim and the hint, all rendered beforehand
+      canvas.drawBitmap(maskLayer, 0, 0, null);
 
       // Draw a red "laser scanner" line through the middle to show decoding is active
       paint.setColor(laserColor);
@@ -136,57 +169,26 @@ public final class ViewfinderView extends View {
       float scaleX = frame.width() / (float) previewFrame.width();
       float scaleY = frame.height() / (float) previewFrame.height();
 
-      List<ResultPoint> currentPossible = possibleResultPoints;
-      List<ResultPoint> currentLast = lastPossibleResultPoints;
-      int frameLeft = frame.left;
-      int frameTop = frame.top;
-      if (currentPossible.isEmpty()) {
-        lastPossibleResultPoints = null;
-      } else {
-        possibleResultPoints = new ArrayList<>(5);
-        lastPossibleResultPoints = currentPossible;
+      // The new points are drawn now, and once more fainter on the next frame
+      float[] currentLast = currentPossibleResultPoints;
+      int lastCount = currentPossibleCount;
+      float[] currentPossible = lastPossibleResultPoints;
+      int possibleCount = possibleResultPoints.drain(currentPossible);
+      currentPossibleResultPoints = currentPossible;
+      currentPossibleCount = possibleCount;
+      lastPossibleResultPoints = currentLast;
+      lastPossibleCount = lastCount;
+      if (possibleCount > 0) {
         paint.setAlpha(CURRENT_POINT_OPACITY);
         paint.setColor(resultPointColor);
-        synchronized (currentPossible) {
-          for (ResultPoint point : currentPossible) {
-            canvas.drawCircle(frameLeft + (int) (point.getX() * scaleX),
-                              frameTop + (int) (point.getY() * scaleY),
-                              POINT_SIZE, paint);
-          }
-        }
+        drawPoints(canvas, currentPossible, possibleCount, scaleX, scaleY, POINT_SIZE);
       }
-      if (currentLast != null) {
+      if (lastCount > 0) {
         paint.setAlpha(CURRENT_POINT_OPACITY / 2);
         paint.setColor(resultPointColor);
-        synchronized (currentLast) {
-          float radius = POINT_SIZE / 2.0f;
-          for (ResultPoint point : currentLast) {
-            canvas.drawCircle(frameLeft + (int) (point.getX() * scaleX),
-                              frameTop + (int) (point.getY() * scaleY),
-                              radius, paint);
-          }
-        }
+        drawPoints(canvas, currentLast, lastCount, scaleX, scaleY, POINT_SIZE / 2.0f);
       }
 
-      //@ch draw the text
-      int margin = canvas.getWidth() / 20;
-      int rectWidth = canvas.getWidth() / 7;
-      int textSize = canvas.getWidth() / 20;
-      Rect targetRect = new Rect(margin, margin, canvas.getWidth() - margin, rectWidth + margin);
-      Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
-      paint.setTextSize(textSize);
-      String testString = "请将二维码放入扫描框中";
-      paint.setColor(Color.CYAN);
-      paint.setAlpha(0xBB);
-      canvas.drawRect(targetRect, paint);
-      paint.setColor(Color.WHITE);
-      FontMetricsInt fontMetrics = paint.getFontMetricsInt();
-          // 转载请注明出处：http://blog.csdn.net/hursing
-      int baseline = targetRect.top + (targetRect.bottom - targetRect.top - fontMetrics.bottom + fontMetrics.top) / 2 - fontMetrics.top;
-      // 下面这行是实现水平居中，drawText对应改为传入targetRect.centerX()
-      paint.setTextAlign(Paint.Align.CENTER);
-      canvas.drawText(testString, targetRect.centerX(), baseline, paint);
-
       // Request another update at the animation interval, but only repaint the laser line,
       // not the entire viewfinder mask.
       postInvalidateDelayed(ANIMATION_DELAY,
@@ -197,12 +199,84 @@ public final class ViewfinderView extends View {
     }
   }
 
+  /**
+   * Draws points found by the decoder, mapping them from the decoded source to the screen.
+   */
+  private void drawPoints(Canvas canvas, float[] points, int count, float scaleX, float scaleY,
+                          float radius) {
+    int frameLeft = frame.left;
+    int frameTop = frame.top;
+    //@ch undo the 90 degree clockwise turn the sensor frame would have needed,
+    //like CameraManager.toFramingRectInPreview() but without a new point each
+    int previewWidth = previewFrame.width();
+    for (int i = 0; i < count; i++) {
+      float x = points[2 * i];
+      float y = points[2 * i + 1];
+      if (decodeInSensorOrientation) {
+        float temp = x;
+        x = previewWidth - 1 - y;
+        y = temp;
+      }
+      canvas.drawCircle(frameLeft + (int) (x * scaleX), frameTop + (int) (y * scaleY), radius, paint);
+    }
+  }
+
+  /**
+   * Draws the exterior (i.e. outside the framing rect) darkened, and the rim.
+   */
+  private void drawMask(Canvas canvas, int width, int height, int color) {
+    Rect frame = this.frame;
+    paint.setColor(color);
+    canvas.drawRect(0, 0, width, frame.top, paint);
+    canvas.drawRect(0, frame.top, frame.left, frame.bottom + 1, paint);
+    canvas.drawRect(frame.right + 1, frame.top, width, frame.bottom + 1, paint);
+    canvas.drawRect(0, frame.bottom + 1, width, height, paint);
+    //@ch draw the rim
+    int rimColor = 0xAA00AA00;
+    int rimWidth = frame.width() / 20;
+    int rimLength = frame.width() / 6;
+    paint.setColor(rimColor);
+    canvas.drawRect(frame.left - rimWidth, frame.top - rimWidth, frame.left + rimLength, frame.top, paint);
+    canvas.drawRect(frame.left - rimWidth, frame.top, frame.left, frame.top + rimLength, paint);
+    canvas.drawRect(frame.right - rimLength, frame.top - rimWidth, frame.right + rimWidth, frame.top, paint);
+    canvas.drawRect(frame.right, frame.top, frame.right + rimWidth, frame.top + rimLength, paint);
+    canvas.drawRect(frame.left - rimWidth, frame.bottom, frame.left + rimLength, frame.bottom + rimWidth, paint);
+    canvas.drawRect(frame.left - rimWidth, frame.bottom - rimLength, frame.left, frame.bottom, paint);
+    canvas.drawRect(frame.right - rimLength, frame.bottom, frame.right + rimWidth, frame.bottom + rimWidth, paint);
+    canvas.drawRect(frame.right,  frame.bottom - rimLength, frame.right + rimWidth, frame.bottom + rimWidth, paint);
+  }
+
+  /**
+   * @ch draw the text
+   */
+  private void drawBanner(Canvas canvas, int width) {
+    int margin = width / 20;
+    int rectWidth = width / 7;
+    int textSize = width / 20;
+    Rect targetRect = new Rect(margin, margin, width - margin, rectWidth + margin);
+    Paint paint = textPaint;
+    paint.setTextSize(textSize);
+    String testString = "请将二维码放入扫描框中";
+    paint.setColor(Color.CYAN);
+    paint.setAlpha(0xBB);
+    canvas.drawRect(targetRect, paint);
+    paint.setColor(Color.WHITE);
+    FontMetricsInt fontMetrics = paint.getFontMetricsInt();
+        // 转载请注明出处：http://blog.csdn.net/hursing
+    int baseline = targetRect.top + (targetRect.bottom - targetRect.top - fontMetrics.bottom + fontMetrics.top) / 2 - fontMetrics.top;
+    // 下面这行是实现水平居中，drawText对应改为传入targetRect.centerX()
+    paint.setTextAlign(Paint.Align.CENTER);
+    canvas.drawText(testString, targetRect.centerX(), baseline, paint);
+  }
+
   public void drawViewfinder() {
     Bitmap resultBitmap = this.resultBitmap;
     this.resultBitmap = null;
     if (resultBitmap != null) {
       resultBitmap.recycle();
     }
+    // A new scan, the framing rect may have changed since
+    geometryValid = false;
     invalidate();
   }
 
@@ -216,16 +290,11 @@ public final class ViewfinderView extends View {
     invalidate();
   }
 
+  /**
+   * Called on the decode threads. Doesn't block or allocate.
+   */
   public void addPossibleResultPoint(ResultPoint point) {
-    List<ResultPoint> points = possibleResultPoints;
-    synchronized (points) {
-      points.add(point);
-      int size = points.size();
-      if (size > MAX_RESULT_POINTS) {
-        // trim it
-        points.subList(0, size - MAX_RESULT_POINTS / 2).clear();
-      }
-    }
+    possibleResultPoints.offer(point.getX(), point.getY());
   }
 
 
@@ -105,6 +105,17 @@ final class AutoFocusManager implements Camera.AutoFocusCallback {
     }
   }
 
+  /**
+   * Focuses right away instead of waiting for the pending {@link AutoFocusTask}. Ignored while a
+   * focus is already in progress.
+   */
+  synchronized void focusNow() {
+    if (useAutoFocus && !stopped && !focusing) {
+      cancelOutstandingTask();
+      start();
+    }
+  }
+
   private synchronized void cancelOutstandingTask() {
     if (outstandingTask != null) {
       if (outstandingTask.getStatus() != AsyncTask.Status.FINISHED) {
@@ -19,6 +19,7 @@ package com.google.zxing.client.android.camera;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.graphics.Point;
+import android.graphics.Rect;
 import android.hardware.Camera;
 import android.os.Build.VERSION;
 import android.preference.PreferenceManager;
@@ -39,16 +40,22 @@ final class CameraConfigurationManager {
   private final Context context;
   private Point screenResolution;
   private Point cameraResolution;
+  private FrontLightMode frontLightMode = FrontLightMode.OFF;
+  //@ch kept here, reading it back from the camera costs a getParameters() round trip
+  private boolean torchOn;
+  private CameraProfile profile;
 
   CameraConfigurationManager(Context context) {
     this.context = context;
   }
 
   /**
-   * Reads, one time, values from the camera that are needed by the app.
+   * Reads, one time, values from the camera that are needed by the app. If this camera was
+   * configured before, they come from its saved {@link CameraProfile} instead.
+   *
+   * @param cameraId the camera id asked for, negative for the default one
    */
-  void initFromCameraParameters(Camera camera) {
-    Camera.Parameters parameters = camera.getParameters();
+  void initFromCameraParameters(Camera camera, int cameraId) {
     WindowManager manager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
     Display display = manager.getDefaultDisplay();
     Point theScreenResolution = new Point();
@@ -61,19 +68,48 @@ final class CameraConfigurationManager {
     }
     screenResolution = theScreenResolution;
     LogUtil.i(TAG, "Screen resolution: " + screenResolution);
+    if (profile == null) {
+      SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+      profile = CameraProfile.load(prefs, cameraId, screenResolution, getFocusPrefs(prefs));
+    }
+    if (profile.isValid()) {
+      cameraResolution = profile.getPreviewSize();
+      LogUtil.i(TAG, "Camera resolution from profile: " + cameraResolution);
+      return;
+    }
+    Camera.Parameters parameters = camera.getParameters();
     cameraResolution = CameraConfigurationUtils.findBestPreviewSizeValue(parameters, screenResolution);
     LogUtil.i(TAG, "Camera resolution: " + cameraResolution);
   }
 
-  void setDesiredCameraParameters(Camera camera, boolean safeMode) {
+  private static int getFocusPrefs(SharedPreferences prefs) {
+    int focusPrefs = 0;
+    if (prefs.getBoolean(PreferencesActivity.KEY_AUTO_FOCUS, true)) {
+      focusPrefs |= 1;
+    }
+    if (prefs.getBoolean(PreferencesActivity.KEY_DISABLE_CONTINUOUS_FOCUS, true)) {
+      focusPrefs |= 2;
+    }
+    return focusPrefs;
+  }
+
+  /**
+   * @return {@code false} if the camera was configured from a profile, but silently replaced its
+   *  preview size; the profile is out of date then, see {@link #invalidateProfile()}
+   */
+  boolean setDesiredCameraParameters(Camera camera, boolean safeMode) {
     Camera.Parameters parameters = camera.getParameters();
 
     if (parameters == null) {
       LogUtil.w(TAG, "Device error: no camera parameters are available. Proceeding without configuration.");
-      return;
+      return true;
     }
 
-    LogUtil.i(TAG, "Initial camera parameters: " + parameters.flatten());
+    //@ch a saved profile was accepted before, so skip probing and logging all parameters
+    boolean fromProfile = !safeMode && profile != null && profile.isValid();
+    if (!fromProfile) {
+      LogUtil.i(TAG, "Initial camera parameters: " + parameters.flatten());
+    }
 
     if (safeMode) {
       LogUtil.w(TAG, "In camera config safe mode -- most settings will not be honored");
@@ -83,11 +119,18 @@ final class CameraConfigurationManager {
 
     initializeTorch(parameters, prefs, safeMode);
 
-    CameraConfigurationUtils.setFocus(
-        parameters,
-        prefs.getBoolean(PreferencesActivity.KEY_AUTO_FOCUS, true),
-        prefs.getBoolean(PreferencesActivity.KEY_DISABLE_CONTINUOUS_FOCUS, true),
-        safeMode);
+    if (fromProfile) {
+      String focusMode = profile.getFocusMode();
+      if (focusMode != null) {
+        parameters.setFocusMode(focusMode);
+      }
+    } else {
+      CameraConfigurationUtils.setFocus(
+          parameters,
+          prefs.getBoolean(PreferencesActivity.KEY_AUTO_FOCUS, true),
+          prefs.getBoolean(PreferencesActivity.KEY_DISABLE_CONTINUOUS_FOCUS, true),
+          safeMode);
+    }
 
     if (!safeMode) {
       if (prefs.getBoolean(PreferencesActivity.KEY_INVERT_SCAN, false)) {
@@ -108,19 +151,60 @@ final class CameraConfigurationManager {
 
     parameters.setPreviewSize(cameraResolution.x, cameraResolution.y);
 
-    LogUtil.i(TAG, "Final camera parameters: " + parameters.flatten());
+    if (!fromProfile) {
+      LogUtil.i(TAG, "Final camera parameters: " + parameters.flatten());
+    }
     //@ch change to vertical
     camera.setDisplayOrientation(90);
     camera.setParameters(parameters);
 
+    //@ch read back even with a profile, a driver may replace a size it no longer supports
+    //without throwing, and the preview buffers are sized from cameraResolution
     Camera.Parameters afterParameters = camera.getParameters();
     Camera.Size afterSize = afterParameters.getPreviewSize();
     if (afterSize!= null && (cameraResolution.x != afterSize.width || cameraResolution.y != afterSize.height)) {
+      if (fromProfile) {
+        LogUtil.w(TAG, "Preview size " + cameraResolution.x + 'x' + cameraResolution.y
+            + " from profile became " + afterSize.width + 'x' + afterSize.height);
+        return false;
+      }
       LogUtil.w(TAG, "Camera said it supported preview size " + cameraResolution.x + 'x' + cameraResolution.y +
                  ", but after setting it, preview size is " + afterSize.width + 'x' + afterSize.height);
       cameraResolution.x = afterSize.width;
       cameraResolution.y = afterSize.height;
     }
+    if (!fromProfile && !safeMode && profile != null) {
+      profile.setCameraParameters(cameraResolution, afterParameters.getFocusMode());
+    }
+    return true;
+  }
+
+  /**
+   * Forgets the saved profile, after the camera rejected it or changed the preview size.
+   *
+   * @return {@code true} if the camera was configured from a profile, and should be configured
+   *  again from scratch after {@link #initFromCameraParameters}
+   */
+  boolean invalidateProfile() {
+    if (profile == null || !profile.isValid()) {
+      return false;
+    }
+    LogUtil.w(TAG, "Camera rejected its saved profile");
+    profile.invalidate();
+    return true;
+  }
+
+  /**
+   * @return the framing rect saved in the profile, or {@code null}
+   */
+  Rect getProfileFramingRect() {
+    return profile == null ? null : profile.getFramingRect();
+  }
+
+  void saveFramingRect(Rect framingRect) {
+    if (profile != null) {
+      profile.setFramingRect(framingRect);
+    }
   }
 
   Point getCameraResolution() {
@@ -131,17 +215,12 @@ final class CameraConfigurationManager {
     return screenResolution;
   }
 
+  FrontLightMode getFrontLightMode() {
+    return frontLightMode;
+  }
+
   boolean getTorchState(Camera camera) {
-    if (camera != null) {
-      Camera.Parameters parameters = camera.getParameters();
-      if (parameters != null) {
-        String flashMode = parameters.getFlashMode();
-        return flashMode != null &&
-            (Camera.Parameters.FLASH_MODE_ON.equals(flashMode) ||
-             Camera.Parameters.FLASH_MODE_TORCH.equals(flashMode));
-      }
-    }
-    return false;
+    return camera != null && torchOn;
   }
 
   void setTorch(Camera camera, boolean newSetting) {
@@ -151,12 +230,23 @@ final class CameraConfigurationManager {
   }
 
   private void initializeTorch(Camera.Parameters parameters, SharedPreferences prefs, boolean safeMode) {
-    boolean currentSetting = FrontLightMode.readPref(prefs) == FrontLightMode.ON;
+    frontLightMode = FrontLightMode.readPref(prefs);
+    //@ch AUTO starts off, the frames tell when it's too dark
+    boolean currentSetting = frontLightMode == FrontLightMode.ON;
     doSetTorch(parameters, currentSetting, safeMode);
   }
 
+  private static boolean isTorchOn(Camera.Parameters parameters) {
+    String flashMode = parameters.getFlashMode();
+    return flashMode != null &&
+        (Camera.Parameters.FLASH_MODE_ON.equals(flashMode) ||
+         Camera.Parameters.FLASH_MODE_TORCH.equals(flashMode));
+  }
+
   private void doSetTorch(Camera.Parameters parameters, boolean newSetting, boolean safeMode) {
     CameraConfigurationUtils.setTorch(parameters, newSetting);
+    // Not every camera has a torch, so see what the parameters ended up with
+    torchOn = isTorchOn(parameters);
     SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
     if (!safeMode && !prefs.getBoolean(PreferencesActivity.KEY_DISABLE_EXPOSURE, true)) {
       CameraConfigurationUtils.setBestExposure(parameters, newSetting);
@@ -51,6 +51,8 @@ public final class CameraConfigurationUtils {
   private static final int MIN_FPS = 10;
   private static final int MAX_FPS = 20;
   private static final int AREA_PER_1000 = 400;
+  //@ch stepZoom goes from no zoom to full zoom in about this many steps
+  private static final int ZOOM_STEPS = 8;
 
   private CameraConfigurationUtils() {
   }
@@ -190,6 +192,24 @@ public final class CameraConfigurationUtils {
     }
   }
 
+  /**
+   * @param area in camera area coordinates, -1000 to 1000 across the sensor
+   */
+  public static void setFocusArea(Camera.Parameters parameters, Rect area) {
+    if (parameters.getMaxNumFocusAreas() > 0) {
+      parameters.setFocusAreas(Collections.singletonList(new Camera.Area(area, 1)));
+    }
+  }
+
+  /**
+   * @param area in camera area coordinates, -1000 to 1000 across the sensor
+   */
+  public static void setMetering(Camera.Parameters parameters, Rect area) {
+    if (parameters.getMaxNumMeteringAreas() > 0) {
+      parameters.setMeteringAreas(Collections.singletonList(new Camera.Area(area, 1)));
+    }
+  }
+
   private static List<Camera.Area> buildMiddleArea(int areaPer1000) {
     return Collections.singletonList(
         new Camera.Area(new Rect(-areaPer1000, -areaPer1000, areaPer1000, areaPer1000), 1));
@@ -238,6 +258,28 @@ public final class CameraConfigurationUtils {
     }
   }
 
+  /**
+   * Zooms in or out by one step.
+   *
+   * @return {@code false} if the zoom didn't change, e.g. it was at the end of its range
+   */
+  public static boolean stepZoom(Camera.Parameters parameters, boolean in) {
+    if (!parameters.isZoomSupported()) {
+      Log.i(TAG, "Zoom is not supported");
+      return false;
+    }
+    int maxZoom = parameters.getMaxZoom();
+    int step = Math.max(1, maxZoom / ZOOM_STEPS);
+    int zoom = parameters.getZoom() + (in ? step : -step);
+    zoom = Math.max(0, Math.min(maxZoom, zoom));
+    if (zoom == parameters.getZoom()) {
+      return false;
+    }
+    Log.i(TAG, "Stepping zoom to " + zoom);
+    parameters.setZoom(zoom);
+    return true;
+  }
+
   private static Integer indexOfClosestZoom(Camera.Parameters parameters, double targetZoomRatio) {
     List<Integer> ratios = parameters.getZoomRatios();
     Log.i(TAG, "Zoom ratios: " + ratios);
@@ -17,18 +17,19 @@
 package com.google.zxing.client.android.camera;
 
 import android.content.Context;
-import android.graphics.Bitmap;
 import android.graphics.Point;
 import android.graphics.Rect;
+import android.graphics.ImageFormat;
 import android.hardware.Camera;
+import android.os.Build.VERSION;
 import android.os.Handler;
 import android.view.SurfaceHolder;
 
-import com.excelsecu.zxing.util.BitmapUtil;
+import com.excelsecu.zxing.engine.FrameCorpusWriter;
 import com.excelsecu.zxing.util.LogUtil;
 import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.ResultPoint;
 import com.google.zxing.client.android.CaptureActivity;
-import com.google.zxing.client.android.ViewfinderView;
 import com.google.zxing.client.android.camera.open.OpenCameraInterface;
 
 import java.io.IOException;
@@ -53,6 +54,9 @@ public final class CameraManager {
   //@ch change to vertical
   private static final int MAX_FRAME_HEIGHT = (int) 1080;
   private static final int MAX_FRAME_WIDTH = (int) 1080;
+  //@ch one being decoded, one newest, one being filled
+  private static final int DEFAULT_PREVIEW_BUFFERS = 3;
+  private static final float DEFAULT_DEBUG_OVERLAY_FPS = 5.0f;
 
   private final Context context;
   private final CameraConfigurationManager configManager;
@@ -65,6 +69,12 @@ public final class CameraManager {
   private int requestedCameraId = OpenCameraInterface.NO_REQUESTED_CAMERA;
   private int requestedFramingRectWidth;
   private int requestedFramingRectHeight;
+  //@ch decode the framing rect straight out of the landscape frame instead of rotating it
+  private boolean decodeInSensorOrientation;
+  private int previewBufferCount = DEFAULT_PREVIEW_BUFFERS;
+  private final PreviewBufferRing previewBufferRing;
+  private volatile FrameCorpusWriter frameRecorder;
+  private DebugPreviewOverlay debugOverlay;
   /**
    * Preview frames are delivered here, which we pass on to the registered handler. Make sure to
    * clear the handler so it will only receive one message.
@@ -74,7 +84,10 @@ public final class CameraManager {
   public CameraManager(Context context) {
     this.context = context;
     this.configManager = new CameraConfigurationManager(context);
-    previewCallback = new PreviewCallback(configManager);
+    previewBufferRing = new PreviewBufferRing();
+    previewCallback = new PreviewCallback(configManager, previewBufferRing);
+    //@ch CaptureActivity wants result points in portrait, see buildLuminanceSource
+    decodeInSensorOrientation = !(context instanceof CaptureActivity);
   }
   
   /**
@@ -84,6 +97,19 @@ public final class CameraManager {
    * @throws IOException Indicates the camera driver failed to open.
    */
   public synchronized void openDriver(SurfaceHolder holder) throws IOException {
+    openCamera();
+    setPreviewDisplay(holder);
+  }
+
+  /**
+   * Opens the camera driver and initializes the hardware parameters, without a surface yet. This
+   * is the slow part of {@link #openDriver}, and may be called on a background thread, so that
+   * it overlaps with creating the surface. Camera callbacks are then delivered on the main
+   * thread, as a background thread has no looper.
+   *
+   * @throws IOException Indicates the camera driver failed to open.
+   */
+  public synchronized void openCamera() throws IOException {
     Camera theCamera = camera;
     if (theCamera == null) {
 
@@ -93,11 +119,10 @@ public final class CameraManager {
       }
       camera = theCamera;
     }
-    theCamera.setPreviewDisplay(holder);
 
     if (!initialized) {
       initialized = true;
-      configManager.initFromCameraParameters(theCamera);
+      configManager.initFromCameraParameters(theCamera, requestedCameraId);
       if (requestedFramingRectWidth > 0 && requestedFramingRectHeight > 0) {
         setManualFramingRect(requestedFramingRectWidth, requestedFramingRectHeight);
         requestedFramingRectWidth = 0;
@@ -105,11 +130,26 @@ public final class CameraManager {
       }
     }
 
+    configure(theCamera);
+  }
+
+  private void configure(Camera theCamera) {
     Camera.Parameters parameters = theCamera.getParameters();
     String parametersFlattened = parameters == null ? null : parameters.flatten(); // Save these, temporarily
     try {
-      configManager.setDesiredCameraParameters(theCamera, false);
+      if (!configManager.setDesiredCameraParameters(theCamera, false)
+          && configManager.invalidateProfile()) {
+        //@ch the camera took the profile but changed its preview size; work it out again
+        configManager.initFromCameraParameters(theCamera, requestedCameraId);
+        configure(theCamera);
+      }
     } catch (RuntimeException re) {
+      if (configManager.invalidateProfile()) {
+        //@ch the saved profile is out of date, e.g. after a system update; work it out again
+        configManager.initFromCameraParameters(theCamera, requestedCameraId);
+        configure(theCamera);
+        return;
+      }
       // Driver failed
       LogUtil.w(TAG, "Camera rejected parameters. Setting only minimal safe-mode parameters");
       LogUtil.i(TAG, "Resetting to saved camera params: " + parametersFlattened);
@@ -129,6 +169,17 @@ public final class CameraManager {
 
   }
 
+  /**
+   * @param holder The surface object which the camera will draw preview frames into.
+   * @throws IOException if the surface can't be used
+   */
+  public synchronized void setPreviewDisplay(SurfaceHolder holder) throws IOException {
+    if (camera == null) {
+      throw new IOException("Camera is not open");
+    }
+    camera.setPreviewDisplay(holder);
+  }
+
   public synchronized boolean isOpen() {
     return camera != null;
   }
@@ -138,6 +189,7 @@ public final class CameraManager {
    */
   public synchronized void closeDriver() {
     if (camera != null) {
+      previewBufferRing.stop();
       camera.release();
       camera = null;
       // Make sure to clear these each time we close the camera, so that any scanning rect
@@ -153,6 +205,7 @@ public final class CameraManager {
   public synchronized void startPreview() {
     Camera theCamera = camera;
     if (theCamera != null && !previewing) {
+      startPreviewBuffers(theCamera);
       theCamera.startPreview();
       previewing = true;
       autoFocusManager = new AutoFocusManager(context, camera);
@@ -168,12 +221,37 @@ public final class CameraManager {
       autoFocusManager = null;
     }
     if (camera != null && previewing) {
+      if (previewBufferRing.isStarted()) {
+        camera.setPreviewCallbackWithBuffer(null);
+        previewBufferRing.stop();
+      }
       camera.stopPreview();
       previewCallback.setHandler(null, 0);
       previewing = false;
     }
   }
 
+  /**
+   * Asks for an auto focus cycle now rather than at the next interval, e.g. because the decoder
+   * keeps getting blurred frames. Does nothing if the camera doesn't auto focus.
+   */
+  public synchronized void requestAutoFocus() {
+    if (autoFocusManager != null) {
+      autoFocusManager.focusNow();
+    }
+  }
+
+  /**
+   * @return the front light preference the camera was opened with
+   */
+  public synchronized FrontLightMode getFrontLightMode() {
+    return configManager.getFrontLightMode();
+  }
+
+  public synchronized boolean isTorchOn() {
+    return configManager.getTorchState(camera);
+  }
+
   /**
    * Convenience method for {@link com.google.zxing.client.android.CaptureActivity}
    *
@@ -193,10 +271,180 @@ public final class CameraManager {
     }
   }
 
+  /**
+   * Focuses and meters on an area of the framing rect, in the coordinates of the luminance source
+   * {@link #buildLuminanceSource} builds, i.e. sensor or portrait orientation.
+   */
+  public synchronized void setFocusArea(float left, float top, float right, float bottom) {
+    Rect rect = getFramingRectInPreview();
+    Point cameraResolution = configManager.getCameraResolution();
+    //@ch api compatible, focus and metering areas are API 14
+    if (camera == null || rect == null || cameraResolution == null || VERSION.SDK_INT < 14) {
+      return;
+    }
+    int height = cameraResolution.y;
+    float sensorLeft;
+    float sensorTop;
+    float sensorRight;
+    float sensorBottom;
+    if (isDecodeInSensorOrientation()) {
+      sensorLeft = rect.top + left;
+      sensorTop = height - rect.right + top;
+      sensorRight = rect.top + right;
+      sensorBottom = height - rect.right + bottom;
+    } else {
+      //@ch portrait (x, y) is sensor (y, height - 1 - x)
+      sensorLeft = rect.top + top;
+      sensorTop = height - 1 - rect.left - right;
+      sensorRight = rect.top + bottom;
+      sensorBottom = height - 1 - rect.left - left;
+    }
+    Rect area = new Rect(toAreaCoordinate(sensorLeft, cameraResolution.x),
+                         toAreaCoordinate(sensorTop, height),
+                         toAreaCoordinate(sensorRight, cameraResolution.x),
+                         toAreaCoordinate(sensorBottom, height));
+    if (area.isEmpty()) {
+      return;
+    }
+    Camera.Parameters parameters = camera.getParameters();
+    if (parameters.getMaxNumFocusAreas() <= 0 && parameters.getMaxNumMeteringAreas() <= 0) {
+      return;
+    }
+    CameraConfigurationUtils.setFocusArea(parameters, area);
+    CameraConfigurationUtils.setMetering(parameters, area);
+    if (setParameters(parameters)) {
+      requestAutoFocus();
+    }
+  }
+
+  private static int toAreaCoordinate(float value, int size) {
+    int coordinate = (int) (value * 2000.0f / size) - 1000;
+    return Math.max(-1000, Math.min(1000, coordinate));
+  }
+
+  /**
+   * Zooms in or out by one step, if the camera can.
+   */
+  public synchronized void stepZoom(boolean in) {
+    //@ch api compatible, zoom is API 8
+    if (camera == null || VERSION.SDK_INT < 8) {
+      return;
+    }
+    Camera.Parameters parameters = camera.getParameters();
+    if (CameraConfigurationUtils.stepZoom(parameters, in)) {
+      setParameters(parameters);
+    }
+  }
+
+  private boolean setParameters(Camera.Parameters parameters) {
+    try {
+      camera.setParameters(parameters);
+      return true;
+    } catch (RuntimeException re) {
+      // Some drivers reject values they advertise
+      LogUtil.w(TAG, "Camera rejected parameters", re);
+      return false;
+    }
+  }
+
+  /**
+   * Sets how many preallocated buffers preview frames are captured into. With two or more, the
+   * camera keeps capturing while a frame is being decoded and no frame is allocated in steady
+   * state. 0 goes back to a one-shot callback per frame. Takes effect at the next
+   * {@link #startPreview()}.
+   *
+   * @param count number of preview buffers
+   */
+  public synchronized void setPreviewBufferCount(int count) {
+    previewBufferCount = count;
+  }
+
+  /**
+   * Records every frame passed to {@link #recordFrame}, as captured, into a corpus which can be
+   * replayed off the device. The caller closes it when done.
+   *
+   * @param recorder where to record, or {@code null} to stop recording
+   */
+  public void setFrameRecorder(FrameCorpusWriter recorder) {
+    frameRecorder = recorder;
+  }
+
+  /**
+   * Appends a preview frame to the recorder, if there is one. Called where frames arrive from
+   * the camera, in the order they were captured, not on the decode threads.
+   *
+   * @param timestamp when the frame was captured, in ms
+   */
+  public void recordFrame(byte[] data, int width, int height, long timestamp) {
+    FrameCorpusWriter recorder = frameRecorder;
+    if (recorder == null) {
+      return;
+    }
+    Rect rect = getFramingRectInPreview();
+    if (rect == null) {
+      return;
+    }
+    //@ch save the capture image, raw, with the framing rect in sensor coordinates
+    try {
+      recorder.append(data, width, height, timestamp,
+                      rect.top, height - rect.right, rect.height(), rect.width(), 90);
+    } catch (IOException ioe) {
+      LogUtil.w(TAG, "Can't record frame, recording stopped", ioe);
+      frameRecorder = null;
+    }
+  }
+
+  /**
+   * Sets how often the frame being decoded is shown on screen, when debugging with
+   * {@link CaptureActivity}.
+   *
+   * @param fps frames a second at most, 0 or less to show none
+   */
+  public synchronized void setDebugOverlayFps(float fps) {
+    DebugPreviewOverlay overlay = getDebugOverlay();
+    if (overlay != null) {
+      overlay.setMaxFps(fps);
+    }
+  }
+
+  /**
+   * @return the overlay, or {@code null} if not debugging with {@link CaptureActivity}
+   */
+  private synchronized DebugPreviewOverlay getDebugOverlay() {
+    if (debugOverlay == null && context instanceof CaptureActivity) {
+      CaptureActivity activity = (CaptureActivity) context;
+      debugOverlay = new DebugPreviewOverlay(activity, activity.getViewfinderView());
+      debugOverlay.setMaxFps(DEFAULT_DEBUG_OVERLAY_FPS);
+    }
+    return debugOverlay;
+  }
+
+  private void startPreviewBuffers(final Camera theCamera) {
+    Point cameraResolution = configManager.getCameraResolution();
+    //@ch api compatible, preview buffers need API 8
+    if (previewBufferCount <= 0 || cameraResolution == null || VERSION.SDK_INT < 8) {
+      return;
+    }
+    Camera.Parameters parameters = theCamera.getParameters();
+    int bitsPerPixel = ImageFormat.getBitsPerPixel(parameters.getPreviewFormat());
+    if (bitsPerPixel <= 0) {
+      LogUtil.w(TAG, "Unknown preview format " + parameters.getPreviewFormat() + ", not using preview buffers");
+      return;
+    }
+    int bufferSize = cameraResolution.x * cameraResolution.y * bitsPerPixel / 8;
+    previewBufferRing.start(new PreviewBufferRing.BufferSink() {
+      @Override
+      public void addCallbackBuffer(byte[] buffer) {
+        theCamera.addCallbackBuffer(buffer);
+      }
+    }, previewBufferCount, bufferSize);
+    theCamera.setPreviewCallbackWithBuffer(previewCallback);
+  }
+
   /**
    * A single preview frame will be returned to the handler supplied. The data will arrive as byte[]
    * in the message.obj field, with width and height encoded as message.arg1 and message.arg2,
-   * respectively.
+   * respectively. Once done with it, pass the data to {@link #releasePreviewFrame(byte[])}.
    *
    * @param handler The handler to send the message to.
    * @param message The what field of the message to be sent.
@@ -205,10 +453,27 @@ public final class CameraManager {
     Camera theCamera = camera;
     if (theCamera != null && previewing) {
       previewCallback.setHandler(handler, message);
-      theCamera.setOneShotPreviewCallback(previewCallback);
+      if (previewBufferRing.isStarted()) {
+        byte[] frame = previewBufferRing.requestFrame();
+        if (frame != null) {
+          previewCallback.dispatchFrame(frame);
+        }
+      } else {
+        theCamera.setOneShotPreviewCallback(previewCallback);
+      }
     }
   }
 
+  /**
+   * Hands a frame from {@link #requestPreviewFrame(Handler, int)} back to the camera so it can be
+   * filled again. Does nothing when preview buffers aren't in use.
+   *
+   * @param data the frame data, which must not be touched afterwards
+   */
+  public void releasePreviewFrame(byte[] data) {
+    previewBufferRing.releaseFrame(data);
+  }
+
   /**
    * Calculates the framing rect which the UI should draw to show the user where to place the
    * barcode. This target helps with alignment as well as forces the user to hold the device
@@ -227,14 +492,17 @@ public final class CameraManager {
         return null;
       }
 
-      int width = findDesiredDimensionInRange(screenResolution.x, MIN_FRAME_WIDTH, MAX_FRAME_WIDTH);
-      //@ch change scan box from rectangle to square
-      int height = findDesiredDimensionInRange(screenResolution.x, MIN_FRAME_HEIGHT, MAX_FRAME_HEIGHT);
-
-      int leftOffset = (screenResolution.x - width) / 2;
-      int topOffset = (screenResolution.y - height) / 2;
-      framingRect = new Rect(leftOffset, topOffset, leftOffset + width, topOffset + height);
-      LogUtil.d(TAG, "Calculated framing rect: " + framingRect);
+      framingRect = configManager.getProfileFramingRect();
+      if (framingRect == null) {
+        int width = findDesiredDimensionInRange(screenResolution.x, MIN_FRAME_WIDTH, MAX_FRAME_WIDTH);
+        //@ch change scan box from rectangle to square
+        int height = findDesiredDimensionInRange(screenResolution.x, MIN_FRAME_HEIGHT, MAX_FRAME_HEIGHT);
+        int leftOffset = (screenResolution.x - width) / 2;
+        int topOffset = (screenResolution.y - height) / 2;
+        framingRect = new Rect(leftOffset, topOffset, leftOffset + width, topOffset + height);
+        LogUtil.d(TAG, "Calculated framing rect: " + framingRect);
+        configManager.saveFramingRect(framingRect);
+      }
     }
     //@ch other code can modify framingRect, bad
     return new Rect(framingRect);
@@ -321,6 +589,74 @@ public final class CameraManager {
     }
   }
 
+  /**
+   * Chooses whether preview frames are decoded in sensor (landscape) orientation. When enabled,
+   * only the pixels under the framing rect are read and nothing is rotated; the decoder does not
+   * care which way up a QR code is. Result points then have to go through
+   * {@link #toFramingRectInPreview(ResultPoint)} before being drawn on screen.
+   *
+   * @param decodeInSensorOrientation {@code false} to read the framing rect turned to portrait
+   */
+  public synchronized void setDecodeInSensorOrientation(boolean decodeInSensorOrientation) {
+    this.decodeInSensorOrientation = decodeInSensorOrientation;
+  }
+
+  public synchronized boolean isDecodeInSensorOrientation() {
+    return decodeInSensorOrientation;
+  }
+
+  /**
+   * Maps a point found by the decoder back into the coordinates of
+   * {@link #getFramingRectInPreview()}, which is what the viewfinder draws against.
+   *
+   * @param point point relative to the source returned by {@link #buildLuminanceSource}
+   * @return the same point in portrait framing rect coordinates
+   */
+  public ResultPoint toFramingRectInPreview(ResultPoint point) {
+    if (point == null || !isDecodeInSensorOrientation()) {
+      return point;
+    }
+    Rect rect = getFramingRectInPreview();
+    if (rect == null) {
+      return point;
+    }
+    // Undo the 90 degree clockwise turn the sensor frame would have needed
+    return new ResultPoint(rect.width() - 1 - point.getY(), point.getX());
+  }
+
+  /**
+   * Renders a greyscale thumbnail of a source built by {@link #buildLuminanceSource}, turned the
+   * same way up as the preview on screen. When decoding in sensor orientation the thumbnail is
+   * {@code source.getThumbnailHeight()} pixels wide and {@code source.getThumbnailWidth()} high.
+   *
+   * @param source the source the barcode was found in
+   * @param sensorOrientation whether {@code source} was built in sensor orientation
+   * @return ARGB pixels, row by row
+   */
+  public static int[] renderThumbnailInPreview(PlanarYUVLuminanceSource source,
+                                               boolean sensorOrientation) {
+    int[] pixels = source.renderThumbnail();
+    if (!sensorOrientation) {
+      return pixels;
+    }
+    return rotateThumbnail(pixels, source.getThumbnailWidth(), source.getThumbnailHeight());
+  }
+
+  /**
+   * Rotates a thumbnail rendered in sensor orientation 90 degrees clockwise, into the orientation
+   * of the preview. The rotated thumbnail is {@code height} wide and {@code width} high.
+   */
+  public static int[] rotateThumbnail(int[] pixels, int width, int height) {
+    int[] rotated = new int[pixels.length];
+    for (int y = 0; y < height; y++) {
+      int inputOffset = y * width;
+      for (int x = 0; x < width; x++) {
+        rotated[x * height + height - 1 - y] = pixels[inputOffset + x];
+      }
+    }
+    return rotated;
+  }
+
   /**
    * A factory method to build the appropriate LuminanceSource object based on the format
    * of the preview buffers, as described by Camera.Parameters.
@@ -335,32 +671,19 @@ public final class CameraManager {
     if (rect == null) {
       return null;
     }
-    //@ch rotated the landscape image
-    byte[] rotatedData = new byte[data.length]; 
-    for (int y = 0; y < height; y++) { 
-    for (int x = 0; x < width; x++) 
-    rotatedData[x * height + height - y - 1] = data[x + y * width]; 
-    }
-    int tmp = width;
-    width = height;
-    height = tmp;
-    data = rotatedData;
-    //@ch save the capture image
-    //BitmapUtil.saveYUV420(data, width, height, rect.left, rect.top, rect.width(), rect.height());
     //@ch use CaptureActivity to debug, it can show the real capture image on Screen
-    if (context instanceof CaptureActivity) {
-        final Bitmap bitmap = Bitmap.createBitmap(BitmapUtil.createBitmapfromYUV420(data, width, height), rect.left, rect.top, rect.width(), rect.height());
-        CaptureActivity activity = ((CaptureActivity) context);
-        final ViewfinderView view = activity.getViewfinderView();
-        activity.runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-                view.drawResultBitmap(bitmap);
-            }
-        });
-    }
-    // Go ahead and assume it's YUV rather than die.
-    return new PlanarYUVLuminanceSource(data, width, height, rect.left, rect.top,
-                                        rect.width(), rect.height(), false);
+    DebugPreviewOverlay overlay = getDebugOverlay();
+    //@ch framingRectInPreview is portrait, the frame is landscape rotated 90 degrees clockwise,
+    //so portrait (x, y) is sensor (y, height - 1 - x)
+    if (overlay != null) {
+      overlay.render(data, width, rect.top, height - rect.right, rect.height(), rect.width(), true);
+    }
+    PlanarYUVLuminanceSource source = new PlanarYUVLuminanceSource(data, width, height,
+        rect.top, height - rect.right, rect.height(), rect.width(), false);
+    if (isDecodeInSensorOrientation()) {
+      return source;
+    }
+    //@ch rotated to portrait as a view, only the crop is copied when it's read
+    return source.rotateClockwise();
   }
 }
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2015 excelsecu authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.camera;
+
+import android.content.SharedPreferences;
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.os.Build;
+import android.os.Build.VERSION;
+
+import com.excelsecu.zxing.util.LogUtil;
+
+/**
+ * What configuring a camera came to on this device, saved so that the next open can set it
+ * straight away instead of working it out again: the preview size, the focus mode and the
+ * framing rect. It's kept per model and camera id, and only used while the screen resolution and
+ * the focus preferences are still the ones it was worked out for.
+ *
+ * The saved string is {@code screen width, screen height, focus prefs, preview width, preview
+ * height, focus mode, framing rect left, top, right, bottom}, comma separated; an empty focus
+ * mode means none was set, and the framing rect is missing until one was calculated.
+ */
+final class CameraProfile {
+
+  private static final String TAG = "CameraProfile";
+  private static final String KEY_PREFIX = "camera_profile_";
+  private static final int FIELDS = 6;
+  private static final int FIELDS_WITH_RECT = 10;
+
+  private final SharedPreferences prefs;
+  private final String key;
+  private final Point screenResolution;
+  private final int focusPrefs;
+  private Point previewSize;
+  private String focusMode;
+  private Rect framingRect;
+
+  private CameraProfile(SharedPreferences prefs, String key, Point screenResolution,
+                        int focusPrefs) {
+    this.prefs = prefs;
+    this.key = key;
+    this.screenResolution = screenResolution;
+    this.focusPrefs = focusPrefs;
+  }
+
+  /**
+   * @param cameraId the camera id asked for, negative for the default one
+   * @param focusPrefs the focus preferences as bits; a profile saved with others is not used
+   * @return the profile for this camera, empty unless one was saved for the same screen
+   *  resolution and focus preferences
+   */
+  static CameraProfile load(SharedPreferences prefs, int cameraId, Point screenResolution,
+                            int focusPrefs) {
+    String key = KEY_PREFIX + Build.MODEL + '_' + cameraId;
+    CameraProfile profile = new CameraProfile(prefs, key, screenResolution, focusPrefs);
+    String saved = prefs.getString(key, null);
+    if (saved != null && !profile.parse(saved)) {
+      LogUtil.i(TAG, "Saved profile is out of date: " + saved);
+    }
+    return profile;
+  }
+
+  private boolean parse(String saved) {
+    String[] fields = saved.split(",", -1);
+    if (fields.length != FIELDS && fields.length != FIELDS_WITH_RECT) {
+      return false;
+    }
+    try {
+      if (Integer.parseInt(fields[0]) != screenResolution.x
+          || Integer.parseInt(fields[1]) != screenResolution.y
+          || Integer.parseInt(fields[2]) != focusPrefs) {
+        return false;
+      }
+      previewSize = new Point(Integer.parseInt(fields[3]), Integer.parseInt(fields[4]));
+      focusMode = fields[5].length() == 0 ? null : fields[5];
+      if (fields.length == FIELDS_WITH_RECT) {
+        framingRect = new Rect(Integer.parseInt(fields[6]), Integer.parseInt(fields[7]),
+                               Integer.parseInt(fields[8]), Integer.parseInt(fields[9]));
+      }
+    } catch (NumberFormatException nfe) {
+      previewSize = null;
+      focusMode = null;
+      framingRect = null;
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * @return {@code true} if the preview size and focus mode can be set without working them out
+   */
+  boolean isValid() {
+    return previewSize != null;
+  }
+
+  Point getPreviewSize() {
+    return previewSize == null ? null : new Point(previewSize.x, previewSize.y);
+  }
+
+  String getFocusMode() {
+    return focusMode;
+  }
+
+  Rect getFramingRect() {
+    return framingRect == null ? null : new Rect(framingRect);
+  }
+
+  /**
+   * Saves what the camera was configured with, after it accepted it.
+   */
+  void setCameraParameters(Point previewSize, String focusMode) {
+    this.previewSize = new Point(previewSize.x, previewSize.y);
+    this.focusMode = focusMode;
+    save();
+  }
+
+  /**
+   * Saves the framing rect calculated for the screen, once the camera parameters are saved.
+   */
+  void setFramingRect(Rect framingRect) {
+    if (previewSize == null) {
+      return;
+    }
+    this.framingRect = new Rect(framingRect);
+    save();
+  }
+
+  /**
+   * Forgets the profile, e.g. when the camera rejected it.
+   */
+  void invalidate() {
+    previewSize = null;
+    focusMode = null;
+    framingRect = null;
+    commit(prefs.edit().remove(key));
+  }
+
+  private void save() {
+    StringBuilder saved = new StringBuilder();
+    saved.append(screenResolution.x).append(',').append(screenResolution.y).append(',')
+        .append(focusPrefs).append(',')
+        .append(previewSize.x).append(',').append(previewSize.y).append(',')
+        .append(focusMode == null ? "" : focusMode);
+    if (framingRect != null) {
+      saved.append(',').append(framingRect.left).append(',').append(framingRect.top)
+          .append(',').append(framingRect.right).append(',').append(framingRect.bottom);
+    }
+    commit(prefs.edit().putString(key, saved.toString()));
+  }
+
+  private static void commit(SharedPreferences.Editor editor) {
+    //@ch api compatible, apply() writes in the background but is API 9
+    if (VERSION.SDK_INT < 9) {
+      editor.commit();
+    } else {
+      editor.apply();
+    }
+  }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2015 excelsecu authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.camera;
+
+import android.app.Activity;
+import android.graphics.Bitmap;
+
+import com.google.zxing.client.android.ViewfinderView;
+
+/**
+ * Shows what the decoder sees on the {@link ViewfinderView}, for debugging. Only the framing
+ * rect is rendered, as greyscale straight from the Y plane, at most a few times a second, into
+ * one pixel array and one Bitmap which are reused, so it hardly changes the timings being
+ * debugged.
+ */
+final class DebugPreviewOverlay implements Runnable {
+
+  private final Activity activity;
+  private final ViewfinderView viewfinderView;
+  private long minIntervalMs;
+  private long lastRenderTime;
+  // Set while the pixels wait for the main thread, which then owns them
+  private boolean pending;
+  private int[] pixels;
+  private int width;
+  private int height;
+  private Bitmap bitmap;
+
+  DebugPreviewOverlay(Activity activity, ViewfinderView viewfinderView) {
+    this.activity = activity;
+    this.viewfinderView = viewfinderView;
+  }
+
+  /**
+   * @param fps how many frames a second to show at most, 0 or less to show none
+   */
+  synchronized void setMaxFps(float fps) {
+    minIntervalMs = fps > 0.0f ? (long) (1000.0f / fps) : -1L;
+  }
+
+  /**
+   * Renders a crop of the Y plane if the last one was shown long enough ago. Any thread.
+   *
+   * @param rotate {@code true} to turn the crop 90 degrees clockwise, i.e. from sensor into
+   *  preview orientation
+   */
+  void render(byte[] yuvData, int dataWidth, int left, int top, int cropWidth, int cropHeight,
+              boolean rotate) {
+    int outWidth = rotate ? cropHeight : cropWidth;
+    int outHeight = rotate ? cropWidth : cropHeight;
+    int[] out;
+    synchronized (this) {
+      long now = System.currentTimeMillis();
+      if (minIntervalMs < 0L || pending || now - lastRenderTime < minIntervalMs) {
+        return;
+      }
+      lastRenderTime = now;
+      pending = true;
+      if (pixels == null || pixels.length != outWidth * outHeight) {
+        pixels = new int[outWidth * outHeight];
+      }
+      width = outWidth;
+      height = outHeight;
+      out = pixels;
+    }
+    for (int y = 0; y < cropHeight; y++) {
+      int inputOffset = (y + top) * dataWidth + left;
+      for (int x = 0; x < cropWidth; x++) {
+        int grey = yuvData[inputOffset + x] & 0xff;
+        int outputOffset = rotate ? x * cropHeight + cropHeight - 1 - y : y * cropWidth + x;
+        out[outputOffset] = 0xFF000000 | (grey * 0x00010101);
+      }
+    }
+    activity.runOnUiThread(this);
+  }
+
+  /**
+   * Copies the pixels into the Bitmap and shows it, on the main thread.
+   */
+  @Override
+  public void run() {
+    synchronized (this) {
+      // drawViewfinder() recycles the bitmap shown, e.g. when the scan restarts
+      if (bitmap == null || bitmap.isRecycled()
+          || bitmap.getWidth() != width || bitmap.getHeight() != height) {
+        bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+      }
+      bitmap.setPixels(pixels, 0, width, 0, 0, width, height);
+      pending = false;
+    }
+    viewfinderView.drawResultBitmap(bitmap);
+  }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2015 excelsecu authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.camera;
+
+/**
+ * A small set of preallocated preview buffers which cycle between the camera and the decoder.
+ * Every buffer is always in exactly one place: queued in the camera, held here as the newest
+ * captured frame, or out being decoded. While the decoder is busy the camera keeps filling the
+ * queued buffers, and only the newest one is kept, so a fresh frame is ready as soon as the
+ * decoder asks for one.
+ *
+ * This class doesn't touch {@link android.hardware.Camera} itself, so it can be driven by a fake
+ * {@link BufferSink} off the device.
+ */
+final class PreviewBufferRing {
+
+  /**
+   * Receives buffers which should be filled with the next preview frame, i.e.
+   * {@link android.hardware.Camera#addCallbackBuffer(byte[])}.
+   */
+  interface BufferSink {
+    void addCallbackBuffer(byte[] buffer);
+  }
+
+  private BufferSink sink;
+  private byte[][] buffers;
+  private byte[] newestFrame;
+  private boolean frameWanted;
+  private long framesDelivered;
+  private long framesDropped;
+
+  /**
+   * Allocates the buffers and queues all of them into the camera.
+   *
+   * @param sink where empty buffers go
+   * @param count number of buffers, at least 2 for capture and decode to overlap
+   * @param bufferSize size in bytes of one preview frame
+   */
+  synchronized void start(BufferSink sink, int count, int bufferSize) {
+    if (count < 1) {
+      throw new IllegalArgumentException("Need at least one preview buffer");
+    }
+    this.sink = sink;
+    // Always fresh buffers: ones from an earlier session may still be out with the decoder
+    buffers = new byte[count][];
+    for (int i = 0; i < count; i++) {
+      buffers[i] = new byte[bufferSize];
+    }
+    newestFrame = null;
+    frameWanted = false;
+    for (byte[] buffer : buffers) {
+      sink.addCallbackBuffer(buffer);
+    }
+  }
+
+  /**
+   * Forgets the camera. Buffers still out with the decoder are simply dropped when released.
+   */
+  synchronized void stop() {
+    sink = null;
+    buffers = null;
+    newestFrame = null;
+    frameWanted = false;
+  }
+
+  synchronized boolean isStarted() {
+    return sink != null;
+  }
+
+  /**
+   * Called with each frame the camera has filled.
+   *
+   * @param frame a buffer previously handed to the camera
+   * @return the frame if the decoder was waiting for one, which it now owns; otherwise
+   *  {@code null} and the frame is kept as the newest one
+   */
+  synchronized byte[] onFrameCaptured(byte[] frame) {
+    if (sink == null) {
+      return null;
+    }
+    if (frameWanted) {
+      frameWanted = false;
+      framesDelivered++;
+      return frame;
+    }
+    if (newestFrame != null) {
+      // Nobody looked at it in time; give it straight back to the camera
+      framesDropped++;
+      sink.addCallbackBuffer(newestFrame);
+    }
+    newestFrame = frame;
+    return null;
+  }
+
+  /**
+   * Called when the decoder wants another frame.
+   *
+   * @return the newest captured frame, which the caller now owns, or {@code null} if none is
+   *  ready yet, in which case the next one captured is returned from {@link #onFrameCaptured}
+   */
+  synchronized byte[] requestFrame() {
+    if (sink == null) {
+      return null;
+    }
+    byte[] frame = newestFrame;
+    if (frame == null) {
+      frameWanted = true;
+      return null;
+    }
+    newestFrame = null;
+    framesDelivered++;
+    return frame;
+  }
+
+  /**
+   * Gives a frame back once the decoder is done with it. Frames which don't belong to the ring,
+   * or which come back after {@link #stop()}, are ignored.
+   */
+  synchronized void releaseFrame(byte[] frame) {
+    if (sink == null || frame == null || buffers == null) {
+      return;
+    }
+    for (byte[] buffer : buffers) {
+      if (buffer == frame) {
+        sink.addCallbackBuffer(frame);
+        return;
+      }
+    }
+  }
+
+  synchronized long getFramesDelivered() {
+    return framesDelivered;
+  }
+
+  synchronized long getFramesDropped() {
+    return framesDropped;
+  }
+
+}
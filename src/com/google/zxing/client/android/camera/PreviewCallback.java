@@ -28,11 +28,13 @@ final class PreviewCallback implements Camera.PreviewCallback {
   private static final String TAG = PreviewCallback.class.getSimpleName();
 
   private final CameraConfigurationManager configManager;
+  private final PreviewBufferRing bufferRing;
   private Handler previewHandler;
   private int previewMessage;
 
-  PreviewCallback(CameraConfigurationManager configManager) {
+  PreviewCallback(CameraConfigurationManager configManager, PreviewBufferRing bufferRing) {
     this.configManager = configManager;
+    this.bufferRing = bufferRing;
   }
 
   void setHandler(Handler previewHandler, int previewMessage) {
@@ -42,6 +44,17 @@ final class PreviewCallback implements Camera.PreviewCallback {
 
   @Override
   public void onPreviewFrame(byte[] data, Camera camera) {
+    if (bufferRing.isStarted()) {
+      data = bufferRing.onFrameCaptured(data);
+      if (data == null) {
+        // Kept as the newest frame until the decoder asks for it
+        return;
+      }
+    }
+    dispatchFrame(data);
+  }
+
+  void dispatchFrame(byte[] data) {
     Point cameraResolution = configManager.getCameraResolution();
     Handler thePreviewHandler = previewHandler;
     if (cameraResolution != null && thePreviewHandler != null) {
@@ -51,6 +64,7 @@ final class PreviewCallback implements Camera.PreviewCallback {
       previewHandler = null;
     } else {
       LogUtil.d(TAG, "Got preview callback, but no handler or resolution available");
+      bufferRing.releaseFrame(data);
     }
   }
 
@@ -86,6 +86,21 @@ public final class BitArray implements Cloneable {
     bits[i / 32] ^= 1 << (i & 0x1F);
   }
 
+  /**
+   * Flips every bit in the array.
+   */
+  public void flip() {
+    int words = (size + 31) / 32;
+    for (int i = 0; i < words; i++) {
+      bits[i] = ~bits[i];
+    }
+    int tail = size & 0x1f;
+    if (tail != 0) {
+      // Bits past the size stay clear
+      bits[words - 1] &= (1 << tail) - 1;
+    }
+  }
+
   /**
    * @param from first bit to check
    * @return index of first bit that is set, starting from the given index, or size if none are set
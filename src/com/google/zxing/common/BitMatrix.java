@@ -161,6 +161,22 @@ public final class BitMatrix implements Cloneable {
     bits[offset] ^= 1 << (x & 0x1f);
   }
 
+  /**
+   * <p>Flips every bit in the matrix, e.g. to read a light on dark code with the thresholds
+   * already found for the image.</p>
+   */
+  public void flip() {
+    int tail = width & 0x1f;
+    int tailMask = tail == 0 ? -1 : (1 << tail) - 1;
+    for (int offset = 0; offset < bits.length; offset += rowSize) {
+      for (int i = 0; i < rowSize; i++) {
+        bits[offset + i] = ~bits[offset + i];
+      }
+      // Bits past the width stay clear
+      bits[offset + rowSize - 1] &= tailMask;
+    }
+  }
+
   /**
    * Exclusive-or (XOR): Flip the bit in this {@code BitMatrix} if the corresponding
    * mask bit is set.
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2015 excelsecu authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.common;
+
+import com.google.zxing.DecodeCancelledException;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.DecodeTimeoutException;
+
+import java.util.Map;
+
+/**
+ * Lets another thread abandon a decode in progress. Pass it with
+ * {@link DecodeHintType#CANCELLATION}; the decoder checks it at cheap points, e.g. every row
+ * the finder pattern search scans, and throws {@link DecodeCancelledException} once cancelled.
+ * A cancellation may also carry a deadline, see {@link #withBudget} and {@link #startBudget}.
+ */
+public final class Cancellation {
+
+  private final Cancellation parent;
+  private volatile boolean hasDeadline;
+  private volatile long deadlineNanos;
+  private volatile boolean cancelled;
+
+  public Cancellation() {
+    this(null, false, 0L);
+  }
+
+  private Cancellation(Cancellation parent, boolean hasDeadline, long deadlineNanos) {
+    this.parent = parent;
+    this.hasDeadline = hasDeadline;
+    this.deadlineNanos = deadlineNanos;
+  }
+
+  /**
+   * @param parent cancelling it cancels the new one too, may be {@code null}
+   * @param budgetMs how long from now until the new one times out
+   * @return a cancellation which also times out after {@code budgetMs}
+   */
+  public static Cancellation withBudget(Cancellation parent, long budgetMs) {
+    return new Cancellation(parent, true, System.nanoTime() + budgetMs * 1000000L);
+  }
+
+  /**
+   * Starts a new deadline, replacing any earlier one, e.g. before each frame, so a reused
+   * cancellation needs no new hints.
+   *
+   * @param budgetMs how long from now until this times out
+   */
+  public void startBudget(long budgetMs) {
+    deadlineNanos = System.nanoTime() + budgetMs * 1000000L;
+    hasDeadline = true;
+  }
+
+  /**
+   * Removes the deadline, if there is one.
+   */
+  public void clearBudget() {
+    hasDeadline = false;
+  }
+
+  /**
+   * Abandons the decode using this, and every later one, as soon as it next checks.
+   */
+  public void cancel() {
+    cancelled = true;
+  }
+
+  public boolean isCancelled() {
+    return cancelled || (parent != null && parent.isCancelled());
+  }
+
+  /**
+   * @throws DecodeCancelledException if cancelled
+   * @throws DecodeTimeoutException if past the deadline
+   */
+  public void check() throws DecodeCancelledException {
+    if (isCancelled()) {
+      throw DecodeCancelledException.getDecodeCancelledInstance();
+    }
+    if (hasDeadline && System.nanoTime() - deadlineNanos > 0L) {
+      throw DecodeTimeoutException.getDecodeTimeoutInstance();
+    }
+  }
+
+  /**
+   * @return the cancellation to check, or {@code null} if none was given
+   */
+  public static Cancellation get(Map<DecodeHintType,?> hints) {
+    return hints == null ? null : (Cancellation) hints.get(DecodeHintType.CANCELLATION);
+  }
+
+  /**
+   * Checks {@code cancellation} if there is one.
+   *
+   * @throws DecodeCancelledException if cancelled
+   */
+  public static void check(Cancellation cancellation) throws DecodeCancelledException {
+    if (cancellation != null) {
+      cancellation.check();
+    }
+  }
+
+}
@@ -122,6 +122,14 @@ public class GlobalHistogramBinarizer extends Binarizer {
     return matrix;
   }
 
+  /**
+   * @return the luminance histogram the last call built to pick its black point,
+   *  32 equally wide buckets from black to white. Don't modify it.
+   */
+  public int[] getHistogram() {
+    return buckets;
+  }
+
   @Override
   public Binarizer createBinarizer(LuminanceSource source) {
     return new GlobalHistogramBinarizer(source);
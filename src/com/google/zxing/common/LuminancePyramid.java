@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2015 excelsecu authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.common;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * Copies of a {@link LuminanceSource} at 1/2 and 1/4 of its size, each pixel the mean of the
+ * 2x2 or 4x4 block it covers. Passed with {@link com.google.zxing.DecodeHintType#LUMINANCE_PYRAMID},
+ * the QR detector looks for finder patterns on the coarsest level, which has a fraction of the
+ * pixels to scan, and only refines them and samples the code on the full image.
+ *
+ * Both levels are built in one pass over the source, into buffers which are kept for the next
+ * frame. Not thread safe; each decode thread has its own.
+ */
+public final class LuminancePyramid {
+
+  /** The coarsest level there is, 1/4 of the source. */
+  public static final int MAX_LEVELS = 2;
+
+  //@ch fewer and finder patterns start to blur into their surroundings
+  private static final float MIN_MODULE_PIXELS = 3.0f;
+
+  private final byte[][] levelData = new byte[MAX_LEVELS + 1][];
+  private final int[] levelWidths = new int[MAX_LEVELS + 1];
+  private final int[] levelHeights = new int[MAX_LEVELS + 1];
+  private byte[] row0;
+  private byte[] row1;
+  private int levels;
+
+  /**
+   * @param moduleSize expected module size in pixels of the source, e.g. from the last frame,
+   *  0 if not known
+   * @return how many levels can be built while keeping modules at least about 3 pixels wide
+   */
+  public static int levelsFor(float moduleSize) {
+    int levels = 0;
+    while (levels < MAX_LEVELS && moduleSize / (2 << levels) >= MIN_MODULE_PIXELS) {
+      levels++;
+    }
+    return levels;
+  }
+
+  /**
+   * Builds the levels for a new frame.
+   *
+   * @param levels how many levels to build, 0 to {@link #MAX_LEVELS}; 0 leaves the pyramid empty
+   */
+  public void build(LuminanceSource source, int levels) {
+    int width = source.getWidth();
+    int height = source.getHeight();
+    levelWidths[0] = width;
+    levelHeights[0] = height;
+    this.levels = 0;
+    for (int level = 1; level <= levels; level++) {
+      int levelWidth = width >> level;
+      int levelHeight = height >> level;
+      if (levelWidth == 0 || levelHeight == 0) {
+        break;
+      }
+      levelWidths[level] = levelWidth;
+      levelHeights[level] = levelHeight;
+      if (levelData[level] == null || levelData[level].length < levelWidth * levelHeight) {
+        levelData[level] = new byte[levelWidth * levelHeight];
+      }
+      this.levels = level;
+    }
+    if (this.levels == 0) {
+      return;
+    }
+
+    int width1 = levelWidths[1];
+    byte[] half = levelData[1];
+    for (int y = 0; y < levelHeights[1]; y++) {
+      row0 = source.getRow(2 * y, row0);
+      row1 = source.getRow(2 * y + 1, row1);
+      byte[] upper = row0;
+      byte[] lower = row1;
+      int offset = y * width1;
+      for (int x = 0, sx = 0; x < width1; x++, sx += 2) {
+        int sum = (upper[sx] & 0xff) + (upper[sx + 1] & 0xff)
+            + (lower[sx] & 0xff) + (lower[sx + 1] & 0xff);
+        half[offset + x] = (byte) ((sum + 2) >> 2);
+      }
+      // Each pair of half rows makes one quarter row, while it's still in the cache
+      if (this.levels >= 2 && (y & 1) == 1 && (y >> 1) < levelHeights[2]) {
+        downscale(half, width1, y - 1, levelData[2], levelWidths[2]);
+      }
+    }
+  }
+
+  private static void downscale(byte[] in, int inWidth, int inY, byte[] out, int outWidth) {
+    int upper = inY * inWidth;
+    int lower = upper + inWidth;
+    int offset = (inY >> 1) * outWidth;
+    for (int x = 0, sx = 0; x < outWidth; x++, sx += 2) {
+      int sum = (in[upper + sx] & 0xff) + (in[upper + sx + 1] & 0xff)
+          + (in[lower + sx] & 0xff) + (in[lower + sx + 1] & 0xff);
+      out[offset + x] = (byte) ((sum + 2) >> 2);
+    }
+  }
+
+  /**
+   * Empties the pyramid, so that the next decode searches the full image.
+   */
+  public void clear() {
+    levels = 0;
+  }
+
+  /**
+   * @return how many levels were built for the current frame, 0 for none
+   */
+  public int getLevels() {
+    return levels;
+  }
+
+  /**
+   * @return width of the source the levels were built from
+   */
+  public int getWidth() {
+    return levelWidths[0];
+  }
+
+  /**
+   * @return height of the source the levels were built from
+   */
+  public int getHeight() {
+    return levelHeights[0];
+  }
+
+  /**
+   * @param level 1 to {@link #getLevels()}, each one half the size of the one before
+   * @return a view of the level; it changes when the next frame is built
+   */
+  public LuminanceSource getLevel(int level) {
+    if (level < 1 || level > levels) {
+      throw new IllegalArgumentException("Level " + level + " of " + levels);
+    }
+    return new Level(levelData[level], levelWidths[level], levelHeights[level]);
+  }
+
+  private static final class Level extends LuminanceSource {
+
+    private final byte[] data;
+
+    Level(byte[] data, int width, int height) {
+      super(width, height);
+      this.data = data;
+    }
+
+    @Override
+    public byte[] getRow(int y, byte[] row) {
+      if (y < 0 || y >= getHeight()) {
+        throw new IllegalArgumentException("Requested row is outside the image: " + y);
+      }
+      int width = getWidth();
+      if (row == null || row.length < width) {
+        row = new byte[width];
+      }
+      System.arraycopy(data, y * width, row, 0, width);
+      return row;
+    }
+
+    @Override
+    public byte[] getMatrix() {
+      // Rows are packed, so the buffer can be handed out as is; its length must be ignored
+      return data;
+    }
+
+  }
+
+}
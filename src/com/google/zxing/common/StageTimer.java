@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2015 excelsecu authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.common;
+
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.DecodeMetrics;
+
+import java.util.Map;
+
+/**
+ * Helpers for timing decode stages into a {@link DecodeMetrics}. When no metrics are given, none
+ * of them even read the clock.
+ */
+public final class StageTimer {
+
+  private StageTimer() {
+  }
+
+  /**
+   * @return the metrics to record into, or {@code null} if none were requested
+   */
+  public static DecodeMetrics getMetrics(Map<DecodeHintType,?> hints) {
+    return hints == null ? null : (DecodeMetrics) hints.get(DecodeHintType.DECODE_METRICS);
+  }
+
+  /**
+   * @return start time of the next stage
+   */
+  public static long start(DecodeMetrics metrics) {
+    return metrics == null ? 0L : System.nanoTime();
+  }
+
+  /**
+   * Records a stage which began at {@code start}.
+   *
+   * @return the current time, which is the start of the next stage
+   */
+  public static long stop(DecodeMetrics metrics, DecodeMetrics.Stage stage, long start) {
+    if (metrics == null) {
+      return 0L;
+    }
+    long now = System.nanoTime();
+    metrics.recordStage(stage, now - start);
+    return now;
+  }
+
+}
@@ -20,6 +20,7 @@ import com.google.zxing.BarcodeFormat;
 import com.google.zxing.BinaryBitmap;
 import com.google.zxing.ChecksumException;
 import com.google.zxing.DecodeHintType;
+import com.google.zxing.DecodeMetrics;
 import com.google.zxing.FormatException;
 import com.google.zxing.NotFoundException;
 import com.google.zxing.Reader;
@@ -27,12 +28,15 @@ import com.google.zxing.Result;
 import com.google.zxing.ResultMetadataType;
 import com.google.zxing.ResultPoint;
 import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.Cancellation;
 import com.google.zxing.common.DecoderResult;
 import com.google.zxing.common.DetectorResult;
+import com.google.zxing.common.StageTimer;
 import com.google.zxing.qrcode.decoder.Decoder;
 import com.google.zxing.qrcode.decoder.QRCodeDecoderMetaData;
 import com.google.zxing.qrcode.detector.Detector;
 
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 
@@ -46,6 +50,10 @@ public class QRCodeReader implements Reader {
   private static final ResultPoint[] NO_POINTS = new ResultPoint[0];
 
   private final Decoder decoder = new Decoder();
+  // For TIME_BUDGET: the hints last decoded with, and the copy carrying our own cancellation
+  private Map<DecodeHintType,?> budgetHintsFor;
+  private Map<DecodeHintType,Object> budgetHints;
+  private Cancellation budgetCancellation;
 
   protected final Decoder getDecoder() {
     return decoder;
@@ -69,12 +77,42 @@ public class QRCodeReader implements Reader {
       throws NotFoundException, ChecksumException, FormatException {
     DecoderResult decoderResult;
     ResultPoint[] points;
+    DecodeMetrics metrics = StageTimer.getMetrics(hints);
+    Cancellation cancellation = Cancellation.get(hints);
+    Integer budget = hints == null ? null : (Integer) hints.get(DecodeHintType.TIME_BUDGET);
+    if (budget != null) {
+      // The deadline starts now; the detector finds it in the hints, which are only copied
+      // when they aren't the same as last time
+      if (hints != budgetHintsFor) {
+        budgetCancellation = Cancellation.withBudget(cancellation, budget);
+        Map<DecodeHintType,Object> callHints = new EnumMap<>(DecodeHintType.class);
+        callHints.putAll(hints);
+        callHints.put(DecodeHintType.CANCELLATION, budgetCancellation);
+        budgetHintsFor = hints;
+        budgetHints = callHints;
+      } else {
+        budgetCancellation.startBudget(budget);
+      }
+      cancellation = budgetCancellation;
+      hints = budgetHints;
+    }
+    Cancellation.check(cancellation);
+    long start = StageTimer.start(metrics);
+    BitMatrix matrix;
+    try {
+      matrix = image.getBlackMatrix();
+    } finally {
+      StageTimer.stop(metrics, DecodeMetrics.Stage.BINARIZE, start);
+    }
+    Cancellation.check(cancellation);
     if (hints != null && hints.containsKey(DecodeHintType.PURE_BARCODE)) {
-      BitMatrix bits = extractPureBits(image.getBlackMatrix());
+      BitMatrix bits = extractPureBits(matrix);
       decoderResult = decoder.decode(bits, hints);
       points = NO_POINTS;
     } else {
-      DetectorResult detectorResult = new Detector(image.getBlackMatrix()).detect(hints);
+      DetectorResult detectorResult = new Detector(matrix).detect(hints);
+      // The decoder takes a millisecond or two, this is the last point worth stopping at
+      Cancellation.check(cancellation);
       decoderResult = decoder.decode(detectorResult.getBits(), hints);
       points = detectorResult.getPoints();
     }
@@ -18,9 +18,11 @@ package com.google.zxing.qrcode.decoder;
 
 import com.google.zxing.ChecksumException;
 import com.google.zxing.DecodeHintType;
+import com.google.zxing.DecodeMetrics;
 import com.google.zxing.FormatException;
 import com.google.zxing.common.BitMatrix;
 import com.google.zxing.common.DecoderResult;
+import com.google.zxing.common.StageTimer;
 import com.google.zxing.common.reedsolomon.GenericGF;
 import com.google.zxing.common.reedsolomon.ReedSolomonDecoder;
 import com.google.zxing.common.reedsolomon.ReedSolomonException;
@@ -41,6 +43,17 @@ public final class Decoder {
     rsDecoder = new ReedSolomonDecoder(GenericGF.QR_CODE_FIELD_256);
   }
 
+  /**
+   * Builds the static tables decoding relies on (versions, format information, the Galois
+   * field), so the first real decode doesn't pay for it. Safe to call any number of times, from
+   * any thread.
+   */
+  public static void warmUp() {
+    Version.getVersionForNumber(1);
+    FormatInformation.decodeFormatInformation(0, 0);
+    GenericGF.QR_CODE_FIELD_256.getSize();
+  }
+
   public DecoderResult decode(boolean[][] image) throws ChecksumException, FormatException {
     return decode(image, null);
   }
@@ -142,13 +155,22 @@ public final class Decoder {
 
   private DecoderResult decode(BitMatrixParser parser, Map<DecodeHintType,?> hints)
       throws FormatException, ChecksumException {
-    Version version = parser.readVersion();
-    ErrorCorrectionLevel ecLevel = parser.readFormatInformation().getErrorCorrectionLevel();
-
-    // Read codewords
-    byte[] codewords = parser.readCodewords();
-    // Separate into data blocks
-    DataBlock[] dataBlocks = DataBlock.getDataBlocks(codewords, version, ecLevel);
+    DecodeMetrics metrics = StageTimer.getMetrics(hints);
+    long start = StageTimer.start(metrics);
+    Version version;
+    ErrorCorrectionLevel ecLevel;
+    DataBlock[] dataBlocks;
+    try {
+      version = parser.readVersion();
+      ecLevel = parser.readFormatInformation().getErrorCorrectionLevel();
+
+      // Read codewords
+      byte[] codewords = parser.readCodewords();
+      // Separate into data blocks
+      dataBlocks = DataBlock.getDataBlocks(codewords, version, ecLevel);
+    } finally {
+      start = StageTimer.stop(metrics, DecodeMetrics.Stage.BIT_MATRIX_PARSER, start);
+    }
 
     // Count total number of data bytes
     int totalBytes = 0;
@@ -159,17 +181,25 @@ public final class Decoder {
     int resultOffset = 0;
 
     // Error-correct and copy data blocks together into a stream of bytes
-    for (DataBlock dataBlock : dataBlocks) {
-      byte[] codewordBytes = dataBlock.getCodewords();
-      int numDataCodewords = dataBlock.getNumDataCodewords();
-      correctErrors(codewordBytes, numDataCodewords);
-      for (int i = 0; i < numDataCodewords; i++) {
-        resultBytes[resultOffset++] = codewordBytes[i];
+    try {
+      for (DataBlock dataBlock : dataBlocks) {
+        byte[] codewordBytes = dataBlock.getCodewords();
+        int numDataCodewords = dataBlock.getNumDataCodewords();
+        correctErrors(codewordBytes, numDataCodewords);
+        for (int i = 0; i < numDataCodewords; i++) {
+          resultBytes[resultOffset++] = codewordBytes[i];
+        }
       }
+    } finally {
+      start = StageTimer.stop(metrics, DecodeMetrics.Stage.REED_SOLOMON, start);
     }
 
     // Decode the contents of that stream of bytes
-    return DecodedBitStreamParser.decode(resultBytes, version, ecLevel, hints);
+    try {
+      return DecodedBitStreamParser.decode(resultBytes, version, ecLevel, hints);
+    } finally {
+      StageTimer.stop(metrics, DecodeMetrics.Stage.BIT_STREAM_PARSER, start);
+    }
   }
 
   /**
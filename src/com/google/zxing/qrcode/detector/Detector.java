@@ -16,15 +16,21 @@
 
 package com.google.zxing.qrcode.detector;
 
+import com.google.zxing.DecodeCancelledException;
 import com.google.zxing.DecodeHintType;
+import com.google.zxing.DecodeMetrics;
 import com.google.zxing.FormatException;
 import com.google.zxing.NotFoundException;
 import com.google.zxing.ResultPoint;
 import com.google.zxing.ResultPointCallback;
 import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.Cancellation;
 import com.google.zxing.common.DetectorResult;
+import com.google.zxing.common.GlobalHistogramBinarizer;
 import com.google.zxing.common.GridSampler;
+import com.google.zxing.common.LuminancePyramid;
 import com.google.zxing.common.PerspectiveTransform;
+import com.google.zxing.common.StageTimer;
 import com.google.zxing.common.detector.MathUtils;
 import com.google.zxing.qrcode.decoder.Version;
 
@@ -40,6 +46,7 @@ public class Detector {
 
   private final BitMatrix image;
   private ResultPointCallback resultPointCallback;
+  private Cancellation cancellation;
 
   public Detector(BitMatrix image) {
     this.image = image;
@@ -76,11 +83,139 @@ public class Detector {
 
     resultPointCallback = hints == null ? null :
         (ResultPointCallback) hints.get(DecodeHintType.NEED_RESULT_POINT_CALLBACK);
+    cancellation = Cancellation.get(hints);
+
+    DecodeMetrics metrics = StageTimer.getMetrics(hints);
+    FinderPatternInfo coarseInfo = findOnPyramid(hints, metrics);
+    if (coarseInfo != null) {
+      long coarseStart = StageTimer.start(metrics);
+      try {
+        return processFinderPatternInfo(coarseInfo);
+      } catch (DecodeCancelledException dce) {
+        throw dce;
+      } catch (NotFoundException | FormatException e) {
+        // Placed badly on the coarse level; search the full image after all
+      } finally {
+        StageTimer.stop(metrics, DecodeMetrics.Stage.SAMPLING, coarseStart);
+      }
+    }
+
+    long start = StageTimer.start(metrics);
+    FinderPatternInfo info;
+    try {
+      FinderPatternFinder finder = new FinderPatternFinder(image, resultPointCallback);
+      info = finder.find(hints);
+    } finally {
+      start = StageTimer.stop(metrics, DecodeMetrics.Stage.FINDER_PATTERNS, start);
+    }
 
-    FinderPatternFinder finder = new FinderPatternFinder(image, resultPointCallback);
-    FinderPatternInfo info = finder.find(hints);
+    Cancellation.check(cancellation);
+    try {
+      return processFinderPatternInfo(info);
+    } finally {
+      StageTimer.stop(metrics, DecodeMetrics.Stage.SAMPLING, start);
+    }
+  }
+
+  /**
+   * Looks for the finder patterns on the coarsest level of the pyramid in the hints, if there is
+   * one for this image, and refines them on the full image.
+   *
+   * @return the finder patterns in full image coordinates, or {@code null} if none were found
+   */
+  private FinderPatternInfo findOnPyramid(Map<DecodeHintType,?> hints, DecodeMetrics metrics)
+      throws DecodeCancelledException {
+    LuminancePyramid pyramid = hints == null ? null :
+        (LuminancePyramid) hints.get(DecodeHintType.LUMINANCE_PYRAMID);
+    if (pyramid == null || pyramid.getLevels() == 0
+        || pyramid.getWidth() != image.getWidth() || pyramid.getHeight() != image.getHeight()) {
+      return null;
+    }
+    int level = pyramid.getLevels();
+    long start = StageTimer.start(metrics);
+    FinderPatternInfo coarseInfo;
+    try {
+      //@ch the box filter already smoothed the level, a global threshold does
+      BitMatrix coarse = new GlobalHistogramBinarizer(pyramid.getLevel(level)).getBlackMatrix();
+      coarseInfo = new FinderPatternFinder(coarse).find(hints);
+    } catch (DecodeCancelledException dce) {
+      throw dce;
+    } catch (NotFoundException nfe) {
+      StageTimer.stop(metrics, DecodeMetrics.Stage.FINDER_PATTERNS, start);
+      return null;
+    }
+    int scale = 1 << level;
+    FinderPattern[] refined = {
+        refineFinderPattern(coarseInfo.getBottomLeft(), scale),
+        refineFinderPattern(coarseInfo.getTopLeft(), scale),
+        refineFinderPattern(coarseInfo.getTopRight(), scale)
+    };
+    if (resultPointCallback != null) {
+      for (FinderPattern pattern : refined) {
+        resultPointCallback.foundPossibleResultPoint(pattern);
+      }
+    }
+    StageTimer.stop(metrics, DecodeMetrics.Stage.FINDER_PATTERNS, start);
+    return new FinderPatternInfo(refined);
+  }
 
-    return processFinderPatternInfo(info);
+  /**
+   * Scales a finder pattern found on a coarse level up to the full image, then centres it on the
+   * pattern's middle 3x3 black square there, which the coarse level only locates to a pixel.
+   */
+  private FinderPattern refineFinderPattern(FinderPattern coarse, int scale) {
+    float x = coarse.getX() * scale;
+    float y = coarse.getY() * scale;
+    float moduleSize = coarse.getEstimatedModuleSize() * scale;
+    // The middle square is 3 modules wide; allow for some blur and perspective
+    int maxRun = (int) (5.0f * moduleSize);
+    int[] run = new int[2];
+    if (!findBlackRun((int) x, (int) y, true, maxRun, run)) {
+      return new FinderPattern(x, y, moduleSize);
+    }
+    float refinedX = (run[0] + run[1] + 1) / 2.0f;
+    int width = run[1] - run[0] + 1;
+    if (!findBlackRun((int) refinedX, (int) y, false, maxRun, run)) {
+      return new FinderPattern(x, y, moduleSize);
+    }
+    float refinedY = (run[0] + run[1] + 1) / 2.0f;
+    int height = run[1] - run[0] + 1;
+    float refinedModuleSize = (width + height) / 6.0f;
+    if (refinedModuleSize < moduleSize / 2.0f || refinedModuleSize > moduleSize * 2.0f) {
+      // Ran into something other than the middle square
+      return new FinderPattern(x, y, moduleSize);
+    }
+    return new FinderPattern(refinedX, refinedY, refinedModuleSize);
+  }
+
+  /**
+   * Finds the black run through a pixel, horizontally or vertically.
+   *
+   * @param run receives the first and last pixel of the run
+   * @return {@code false} if the pixel is white, off the image, or the run is longer than
+   *  {@code maxRun}
+   */
+  private boolean findBlackRun(int x, int y, boolean horizontal, int maxRun, int[] run) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    if (x < 0 || y < 0 || x >= width || y >= height || !image.get(x, y)) {
+      return false;
+    }
+    int start = horizontal ? x : y;
+    int end = start;
+    int limit = horizontal ? width : height;
+    while (start > 0 && end - start <= maxRun && (horizontal ? image.get(start - 1, y) : image.get(x, start - 1))) {
+      start--;
+    }
+    while (end < limit - 1 && end - start <= maxRun && (horizontal ? image.get(end + 1, y) : image.get(x, end + 1))) {
+      end++;
+    }
+    if (end - start + 1 > maxRun) {
+      return false;
+    }
+    run[0] = start;
+    run[1] = end;
+    return true;
   }
 
   protected final DetectorResult processFinderPatternInfo(FinderPatternInfo info)
@@ -114,6 +249,7 @@ public class Detector {
 
       // Kind of arbitrary -- expand search radius before giving up
       for (int i = 4; i <= 16; i <<= 1) {
+        Cancellation.check(cancellation);
         try {
           alignmentPattern = findAlignmentInRegion(moduleSize,
               estAlignmentX,
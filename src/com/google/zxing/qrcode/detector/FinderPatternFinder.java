@@ -21,6 +21,7 @@ import com.google.zxing.NotFoundException;
 import com.google.zxing.ResultPoint;
 import com.google.zxing.ResultPointCallback;
 import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.Cancellation;
 
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -76,6 +77,7 @@ public class FinderPatternFinder {
   final FinderPatternInfo find(Map<DecodeHintType,?> hints) throws NotFoundException {
     boolean tryHarder = hints != null && hints.containsKey(DecodeHintType.TRY_HARDER);
     boolean pureBarcode = hints != null && hints.containsKey(DecodeHintType.PURE_BARCODE);
+    Cancellation cancellation = Cancellation.get(hints);
     int maxI = image.getHeight();
     int maxJ = image.getWidth();
     // We are looking for black/white/black/white/black modules in
@@ -93,6 +95,8 @@ public class FinderPatternFinder {
     boolean done = false;
     int[] stateCount = new int[5];
     for (int i = iSkip - 1; i < maxI && !done; i += iSkip) {
+      // A volatile read per row is cheap next to scanning it
+      Cancellation.check(cancellation);
       // Get a row of black/white values
       stateCount[0] = 0;
       stateCount[1] = 0;
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2015 excelsecu authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.camera;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Drives a {@link PreviewBufferRing} with a fake camera, which fills its queued buffers in
+ * order like {@link android.hardware.Camera} does with callback buffers.
+ */
+public final class PreviewBufferRingTestCase extends Assert {
+
+  private static final int BUFFER_SIZE = 16;
+
+  private static final class FakeCamera implements PreviewBufferRing.BufferSink {
+
+    private final Deque<byte[]> queued = new ArrayDeque<>();
+    // Every buffer the camera was ever given
+    private final Map<byte[],Boolean> seen = new IdentityHashMap<>();
+
+    @Override
+    public void addCallbackBuffer(byte[] buffer) {
+      assertFalse("Buffer queued twice", queued.contains(buffer));
+      queued.addLast(buffer);
+      seen.put(buffer, Boolean.TRUE);
+    }
+
+    // Fills the oldest queued buffer, or returns null if the camera has none to fill
+    byte[] capture() {
+      return queued.pollFirst();
+    }
+
+    boolean isQueued(byte[] buffer) {
+      for (byte[] queuedBuffer : queued) {
+        if (queuedBuffer == buffer) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  @Test
+  public void testSteadyStateAllocatesNothing() {
+    FakeCamera camera = new FakeCamera();
+    PreviewBufferRing ring = new PreviewBufferRing();
+    ring.start(camera, 3, BUFFER_SIZE);
+    assertEquals(3, camera.queued.size());
+
+    byte[] decoding = null;
+    for (int i = 0; i < 1000; i++) {
+      // Two frames are captured for every one decoded
+      for (int j = 0; j < 2; j++) {
+        byte[] frame = camera.capture();
+        assertNotNull("Camera ran out of buffers", frame);
+        byte[] delivered = ring.onFrameCaptured(frame);
+        if (delivered != null) {
+          assertNull(decoding);
+          decoding = delivered;
+        }
+      }
+      if (decoding != null) {
+        ring.releaseFrame(decoding);
+        decoding = null;
+      }
+      decoding = ring.requestFrame();
+    }
+    // Only the buffers allocated by start() ever went round
+    assertEquals(3, camera.seen.size());
+    assertTrue(ring.getFramesDelivered() > 0L);
+    assertTrue(ring.getFramesDropped() > 0L);
+  }
+
+  @Test
+  public void testOlderFrameGoesBackWhenNewerArrives() {
+    FakeCamera camera = new FakeCamera();
+    PreviewBufferRing ring = new PreviewBufferRing();
+    ring.start(camera, 3, BUFFER_SIZE);
+
+    byte[] older = camera.capture();
+    assertNull(ring.onFrameCaptured(older));
+    assertFalse(camera.isQueued(older));
+    byte[] newer = camera.capture();
+    assertNull(ring.onFrameCaptured(newer));
+    assertTrue(camera.isQueued(older));
+    assertFalse(camera.isQueued(newer));
+    assertEquals(1L, ring.getFramesDropped());
+
+    assertSame(newer, ring.requestFrame());
+    assertEquals(1L, ring.getFramesDelivered());
+  }
+
+  @Test
+  public void testWaitingDecoderGetsNextFrame() {
+    FakeCamera camera = new FakeCamera();
+    PreviewBufferRing ring = new PreviewBufferRing();
+    ring.start(camera, 2, BUFFER_SIZE);
+
+    assertNull(ring.requestFrame());
+    byte[] frame = camera.capture();
+    assertSame(frame, ring.onFrameCaptured(frame));
+    assertEquals(1L, ring.getFramesDelivered());
+    assertEquals(0L, ring.getFramesDropped());
+  }
+
+  @Test
+  public void testReleaseGivesBufferBack() {
+    FakeCamera camera = new FakeCamera();
+    PreviewBufferRing ring = new PreviewBufferRing();
+    ring.start(camera, 2, BUFFER_SIZE);
+
+    byte[] frame = camera.capture();
+    ring.onFrameCaptured(frame);
+    assertSame(frame, ring.requestFrame());
+    assertFalse(camera.isQueued(frame));
+    ring.releaseFrame(frame);
+    assertTrue(camera.isQueued(frame));
+
+    // Buffers which aren't the ring's are ignored
+    ring.releaseFrame(new byte[BUFFER_SIZE]);
+    assertEquals(2, camera.queued.size());
+  }
+
+  @Test
+  public void testReleaseAfterStopIsIgnored() {
+    FakeCamera camera = new FakeCamera();
+    PreviewBufferRing ring = new PreviewBufferRing();
+    ring.start(camera, 2, BUFFER_SIZE);
+
+    byte[] frame = camera.capture();
+    ring.onFrameCaptured(frame);
+    assertSame(frame, ring.requestFrame());
+    ring.stop();
+    ring.releaseFrame(frame);
+    assertFalse(camera.isQueued(frame));
+    assertNull(ring.onFrameCaptured(camera.capture()));
+  }
+
+}